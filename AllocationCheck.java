@@ -0,0 +1,128 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+// Headless allocation check for the steady-state frame and tick paths.
+// Runs the scripted camera path (frames) and scripted input (ticks) of RenderBenchmark and
+// counts the bytes allocated per frame / per tick after warmup: by every thread for frames (the
+// parallel wall pass runs on the pool's workers), by the calling thread for ticks. Exits with
+// status 1 if any path goes over the limit, so it can run as a build step.
+//
+// Ticks that spawn a new wave are left out: creating enemies is meant to allocate (in the
+// object list mode) and only happens once per wave.
+//
+// Usage:
+//   java -Djava.awt.headless=true AllocationCheck [res=800x600] [enemies=64] [warmup=3000]
+//        [iters=2000] [limit=8] [seed=42]
+// limit is the average number of bytes per frame or tick allowed; the default is below one
+// object per frame, leaving room only for the odd allocation in code the JIT has not compiled yet.
+public class AllocationCheck {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static boolean failed;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int w = 800, h = 600;
+        int enemies = 64;
+        int warmup = 3000, iters = 2000;
+        long limit = 8;
+        long seed = 42;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "res": {
+                    String[] wh = kv[1].split("x");
+                    w = Integer.parseInt(wh[0].trim());
+                    h = Integer.parseInt(wh[1].trim());
+                    break;
+                }
+                case "enemies": enemies = Integer.parseInt(kv[1]); break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "iters": iters = Integer.parseInt(kv[1]); break;
+                case "limit": limit = Long.parseLong(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.err.println("This JVM cannot count allocated bytes per thread");
+            System.exit(2);
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        System.out.printf("%-16s %10s %14s %10s%n", "path", "runs", "bytes/run", "skipped");
+        GameState state = RenderBenchmark.newState(enemies, seed);
+        checkFrames("frame fb", state, new Renderer(state, true, 1), w, h, warmup, iters, limit);
+        int threads = Math.max(2, GameConfig.RENDER_THREADS);
+        checkFrames("frame fb x" + threads, state, new Renderer(state, true, threads), w, h, warmup, iters, limit);
+        checkFrames("frame flat", state, new Renderer(state, true, 1, null), w, h, warmup, iters, limit);
+        checkFrames("frame g2d", state, new Renderer(state, false, 1), w, h, warmup, iters, limit);
+        checkTicks("tick", RenderBenchmark.newState(enemies, seed, false), warmup, iters, limit);
+        checkTicks("tick soa", RenderBenchmark.newState(enemies, seed, true), warmup, iters, limit);
+        System.out.println(failed ? "FAILED: over " + limit + " bytes per run" : "OK");
+        System.exit(failed ? 1 : 0); // stop the render worker pool
+    }
+
+    // Whole frames through Renderer.render, HUD included
+    private static void checkFrames(String name, GameState state, Renderer r, int w, int h,
+                                    int warmup, int iters, long limit) {
+        r.setSize(w, h);
+        BufferedImage target = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = target.createGraphics();
+        for (int i = 0; i < warmup; i++) {
+            RenderBenchmark.placeCamera(state, i);
+            r.render(g2, w, h);
+        }
+        long before = allThreadsAllocatedBytes();
+        for (int i = warmup; i < warmup + iters; i++) {
+            RenderBenchmark.placeCamera(state, i); // allocation-free as well (tick path)
+            r.render(g2, w, h);
+        }
+        long bytes = allThreadsAllocatedBytes() - before;
+        g2.dispose();
+        report(name, iters, bytes, 0, limit);
+    }
+
+    // GameState.update with RenderBenchmark's scripted input (walk, turn, fire every 10th tick)
+    private static void checkTicks(String name, GameState state, int warmup, int iters, long limit) {
+        InputHandler input = state.input;
+        long bytes = 0;
+        int counted = 0, skipped = 0;
+        for (int i = 0; i < warmup + iters; i++) {
+            input.up = (i / 60) % 2 == 0;
+            input.rotateLeft = (i / 45) % 3 == 0;
+            input.shooting = i % 10 == 0;
+            state.lives = 5; // never reach game over, it would skip the tick
+            int before = state.enemyCount();
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            state.update(input);
+            allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            if (i < warmup) continue;
+            if (state.enemyCount() > before) {
+                skipped++; // new wave
+            } else {
+                bytes += allocated;
+                counted++;
+            }
+        }
+        report(name, counted, bytes, skipped, limit);
+    }
+
+    // Also counts the arrays this allocates itself, a few hundred bytes per measurement
+    private static long allThreadsAllocatedBytes() {
+        long sum = 0;
+        for (long b : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (b > 0) sum += b;
+        }
+        return sum;
+    }
+
+    private static void report(String name, int runs, long bytes, int skipped, long limit) {
+        double perRun = (runs == 0) ? 0 : bytes / (double) runs;
+        System.out.printf("%-16s %10d %14.1f %10d%s%n", name, runs, perRun, skipped, perRun > limit ? "  <-- over" : "");
+        if (perRun > limit) failed = true;
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.Random;
+
+// Simulation for the multiplayer arena (see ArenaServer): up to MAX_PLAYERS players sharing
+// one level and one set of enemies. Moving, shooting and taking damage work like GameState;
+// enemies chase whichever player is nearest, in a straight line, since the flow field only
+// tracks one target. A player who loses all lives respawns with a fresh score.
+//
+// Players are slots in parallel arrays (like EnemyStore) indexed by the id ArenaServer hands out.
+// Input is the 6-bit key state of InputRecording: up, down, left, right, shooting, paused.
+public class Arena {
+    public static final int MAX_PLAYERS = 64;
+    public static final int MAX_ENEMIES = 256;
+    public static final int IN_UP = 1, IN_DOWN = 2, IN_LEFT = 4, IN_RIGHT = 8, IN_SHOOT = 16;
+    private static final int START_LIVES = 5;
+    private static final int SHOT_TICKS = 6; // ticks between shots, like GameState's shootFrame cycle
+    private static final int WAVE = 8;
+
+    public final LevelGrid map;
+    public final EnemyStore enemies = new EnemyStore(MAX_ENEMIES);
+    private final Random rand;
+    private final int invincibleTicks = GameConfig.TICK_RATE; // 1 s
+    public long tick;
+
+    // --- Players, by id ---
+    public final boolean[] active = new boolean[MAX_PLAYERS];
+    public final double[] x = new double[MAX_PLAYERS], y = new double[MAX_PLAYERS];
+    public final double[] dirX = new double[MAX_PLAYERS], dirY = new double[MAX_PLAYERS];
+    public final int[] lives = new int[MAX_PLAYERS], score = new int[MAX_PLAYERS];
+    private final int[] input = new int[MAX_PLAYERS];
+    private final int[] shotCooldown = new int[MAX_PLAYERS];
+    private final long[] invincibleUntil = new long[MAX_PLAYERS];
+    public int playerCount;
+
+    public Arena(LevelGrid map, long seed) {
+        this.map = map;
+        this.rand = new Random(seed);
+    }
+
+    // Returns the new player's id, -1 if the arena is full
+    public int join() {
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (active[id]) continue;
+            active[id] = true;
+            playerCount++;
+            respawn(id);
+            return id;
+        }
+        return -1;
+    }
+
+    public void leave(int id) {
+        if (!active[id]) return;
+        active[id] = false;
+        playerCount--;
+    }
+
+    public void setInput(int id, int bits) {
+        input[id] = bits;
+    }
+
+    private void respawn(int id) {
+        x[id] = map.spawnX;
+        y[id] = map.spawnY;
+        dirX[id] = -1;
+        dirY[id] = 0;
+        lives[id] = START_LIVES;
+        score[id] = 0;
+        input[id] = 0;
+        shotCooldown[id] = 0;
+        invincibleUntil[id] = tick + invincibleTicks;
+    }
+
+    public void tick() {
+        tick++;
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (active[id]) movePlayer(id);
+        }
+        moveEnemies();
+        if (enemies.count == 0 && playerCount > 0) spawnWave(Math.min(MAX_ENEMIES, WAVE + 2 * playerCount));
+    }
+
+    private void movePlayer(int id) {
+        int in = input[id];
+        double step = ((in & IN_UP) != 0) ? GameState.MOVE_SPEED : (((in & IN_DOWN) != 0) ? -GameState.MOVE_SPEED : 0);
+        if (step != 0) {
+            double nextX = x[id] + dirX[id] * step, nextY = y[id] + dirY[id] * step;
+            if (!map.isWall((int) nextX, (int) y[id])) x[id] = nextX;
+            if (!map.isWall((int) x[id], (int) nextY)) y[id] = nextY;
+        }
+        double rot = ((in & IN_RIGHT) != 0) ? -GameState.ROT_SPEED : (((in & IN_LEFT) != 0) ? GameState.ROT_SPEED : 0);
+        if (rot != 0) {
+            double oldDirX = dirX[id];
+            dirX[id] = dirX[id] * Math.cos(rot) - dirY[id] * Math.sin(rot);
+            dirY[id] = oldDirX * Math.sin(rot) + dirY[id] * Math.cos(rot);
+        }
+        if (shotCooldown[id] > 0) {
+            shotCooldown[id]--;
+        } else if ((in & IN_SHOOT) != 0) {
+            shotCooldown[id] = SHOT_TICKS;
+            score[id] += enemies.hitscan(map, x[id], y[id], dirX[id], dirY[id], 10, tick);
+        }
+    }
+
+    private void moveEnemies() {
+        EnemyStore st = enemies;
+        for (int i = 0; i < st.highWater; i++) {
+            if (!st.isAlive(i)) continue;
+            // Nearest player
+            int target = -1;
+            double best = Double.MAX_VALUE;
+            for (int id = 0; id < MAX_PLAYERS; id++) {
+                if (!active[id]) continue;
+                double d = (x[id] - st.x[i]) * (x[id] - st.x[i]) + (y[id] - st.y[i]) * (y[id] - st.y[i]);
+                if (d < best) { best = d; target = id; }
+            }
+            if (target < 0) return; // nobody to chase
+            st.move(i, map, null, x[target], y[target]);
+
+            // Damage every player it touches
+            for (int id = 0; id < MAX_PLAYERS; id++) {
+                if (!active[id] || tick < invincibleUntil[id]) continue;
+                double dx = x[id] - st.x[i], dy = y[id] - st.y[i];
+                if (dx * dx + dy * dy >= 0.25) continue;
+                invincibleUntil[id] = tick + invincibleTicks;
+                if (--lives[id] <= 0) respawn(id);
+            }
+        }
+    }
+
+    private void spawnWave(int count) {
+        for (int i = 0; i < count; i++) {
+            int ex, ey;
+            int attempts = 0;
+            do { // away from players if possible; with many players there may be no such cell
+                ex = 1 + rand.nextInt(map.width - 2);
+                ey = 1 + rand.nextInt(map.height - 2);
+            } while (map.isWall(ex, ey) || (++attempts < 100 && nearPlayer(ex + 0.5, ey + 0.5, 5)));
+            int typeChoice = rand.nextInt(3);
+            EnemyType t = (typeChoice == 0) ? EnemyType.SPEED : (typeChoice == 1 ? EnemyType.TANK : EnemyType.BOUNCER);
+            enemies.spawn(t, ex + 0.5, ey + 0.5, rand.nextDouble() * Math.PI * 2);
+        }
+    }
+
+    private boolean nearPlayer(double px, double py, double radius) {
+        for (int id = 0; id < MAX_PLAYERS; id++) {
+            if (!active[id]) continue;
+            if ((x[id] - px) * (x[id] - px) + (y[id] - py) * (y[id] - py) < radius * radius) return true;
+        }
+        return false;
+    }
+}
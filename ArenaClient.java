@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+// Non-blocking connection to an ArenaServer: sends the key state, keeps a mirror of the arena
+// built from the snapshots (see ArenaProtocol for the layout of state). Not thread-safe; one
+// thread calls poll() and sendInput(), usually from a Selector loop.
+public class ArenaClient {
+    public final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(2 * ArenaProtocol.MAX_FRAME_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocate(1);
+
+    // --- Mirror ---
+    public final int[] state = new int[ArenaProtocol.ENTITIES * ArenaProtocol.FIELDS];
+    public final boolean[] present = new boolean[ArenaProtocol.ENTITIES];
+    public int playerId = -1; // until WELCOME arrives
+    public long lastTick;
+
+    // --- Stats ---
+    public long bytesReceived, snapshots, inputsDropped;
+    public boolean closed;
+
+    public ArenaClient(InetSocketAddress server) throws IOException {
+        channel = SocketChannel.open(server); // blocking connect, then non-blocking from here on
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+    // Reads everything available and applies every complete frame; false once the server is gone
+    public boolean poll() throws IOException {
+        if (closed) return false;
+        int n;
+        while ((n = channel.read(in)) > 0) {
+            bytesReceived += n;
+            parseFrames();
+        }
+        if (n < 0) closed = true;
+        return !closed;
+    }
+
+    private void parseFrames() throws IOException {
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > ArenaProtocol.MAX_FRAME_BYTES) throw new IOException("Bad frame length " + length);
+            if (in.remaining() < 4 + length) break; // rest of the frame not here yet
+            in.position(in.position() + 4);
+            int next = in.position() + length;
+            byte type = in.get();
+            if (type == ArenaProtocol.WELCOME) {
+                playerId = ArenaProtocol.getVarint(in);
+            } else if (type == ArenaProtocol.SNAPSHOT) {
+                lastTick = ArenaProtocol.applySnapshot(in, length - 1, state, present);
+                snapshots++;
+            }
+            in.position(next); // skip unknown frame types
+        }
+        in.compact();
+    }
+
+    // Sends the key state (Arena.IN_* bits); dropped if the socket cannot take it right now,
+    // since the next tick's state replaces it anyway
+    public void sendInput(int bits) throws IOException {
+        out.clear();
+        out.put((byte) bits);
+        out.flip();
+        if (channel.write(out) == 0) inputsDropped++;
+    }
+
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Random;
+
+// Loopback load test for ArenaServer: starts a server on a free port, connects N clients that
+// press random keys every tick, and after the given time reports the bandwidth per client and
+// the server's tick cost. At the end it checks that every client's mirror matches exactly what
+// the server believes it sent, which catches any delta encoding mistake.
+//
+// Usage: java ArenaLoadTest [clients=32] [seconds=10] [seed=1] [level=<file>]
+public class ArenaLoadTest {
+    public static void main(String[] args) throws Exception {
+        int clientCount = 32;
+        int seconds = 10;
+        long seed = 1;
+        String level = GameConfig.LEVEL;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "clients": clientCount = Integer.parseInt(kv[1]); break;
+                case "seconds": seconds = Integer.parseInt(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                case "level": level = kv[1]; break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+        if (clientCount > Arena.MAX_PLAYERS) {
+            System.err.println("At most " + Arena.MAX_PLAYERS + " clients");
+            System.exit(1);
+        }
+
+        LevelGrid map = (level == null) ? LevelGrid.createDefault() : LevelGrid.load(level);
+        ArenaServer server = new ArenaServer(map, 0, seed);
+        Thread serverThread = new Thread(server::run, "arena-server");
+        serverThread.start();
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.port());
+        ArenaClient[] clients = new ArenaClient[clientCount];
+        Selector selector = Selector.open();
+        for (int i = 0; i < clientCount; i++) {
+            clients[i] = new ArenaClient(address);
+            clients[i].channel.register(selector, SelectionKey.OP_READ, clients[i]);
+        }
+
+        // --- Play ---
+        Random rand = new Random(seed);
+        int[] keys = new int[clientCount];
+        long tickNanos = 1_000_000_000L / GameConfig.TICK_RATE;
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long nextInput = start;
+        while (System.nanoTime() < end) {
+            long now = System.nanoTime();
+            if (now >= nextInput) {
+                nextInput += tickNanos;
+                for (int i = 0; i < clientCount; i++) {
+                    if (rand.nextInt(10) == 0) keys[i] = rand.nextInt(32); // hold keys for a while, like a player
+                    clients[i].sendInput(keys[i]);
+                }
+            }
+            poll(selector, Math.max(1, (nextInput - System.nanoTime()) / 1_000_000));
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // --- Drain: the server flushes what it has buffered, clients read until they have it all ---
+        server.stop();
+        serverThread.join();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (received(clients) < server.bytesSent && System.nanoTime() < deadline) poll(selector, 10);
+
+        // --- Report ---
+        long bytes = received(clients);
+        long snapshots = 0, dropped = 0;
+        int inSync = 0;
+        for (ArenaClient c : clients) {
+            snapshots += c.snapshots;
+            dropped += c.inputsDropped;
+            if (c.playerId >= 0 && server.clientInSync(c.playerId, c.state, c.present)) inSync++;
+        }
+        FrameTimer t = server.timer;
+        int total = t.totalPhase();
+        System.out.printf("%d clients, %.1f s, %d server ticks (%.1f/s), %d players / %d enemies at the end%n",
+                clientCount, elapsed, server.ticks, server.ticks / elapsed,
+                server.arena.playerCount, server.arena.enemies.count);
+        System.out.printf("bandwidth: %.0f bytes/s per client (%.1f bytes per snapshot), %d snapshots skipped, %d inputs dropped%n",
+                bytes / elapsed / clientCount, bytes / (double) Math.max(1, snapshots), server.framesSkipped, dropped);
+        System.out.printf("server tick: avg %.1f us, max %.1f us; last window p50 %.1f us, p99 %.1f us%n",
+                server.totalTickNanos / 1e3 / Math.max(1, server.ticks), server.maxTickNanos / 1e3,
+                t.p50(total) / 1e3, t.p99(total) / 1e3);
+        for (int p = 0; p < total; p++) {
+            System.out.printf("  %-9s p50 %7.1f us  p99 %7.1f us  max %7.1f us%n",
+                    t.phaseName(p), t.p50(p) / 1e3, t.p99(p) / 1e3, t.max(p) / 1e3);
+        }
+        boolean ok = inSync == clientCount;
+        System.out.println(ok ? "all " + clientCount + " client mirrors match the server"
+                : "MISMATCH: only " + inSync + " of " + clientCount + " client mirrors match the server");
+
+        for (ArenaClient c : clients) c.close();
+        server.close();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void poll(Selector selector, long timeoutMillis) throws IOException {
+        selector.select(timeoutMillis);
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            ArenaClient c = (ArenaClient) key.attachment();
+            if (!c.poll()) key.cancel();
+        }
+    }
+
+    private static long received(ArenaClient[] clients) {
+        long sum = 0;
+        for (ArenaClient c : clients) sum += c.bytesReceived;
+        return sum;
+    }
+}
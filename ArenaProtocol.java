@@ -0,0 +1,139 @@
+import java.nio.ByteBuffer;
+
+// Wire format shared by ArenaServer and ArenaClient (TCP, big-endian).
+//
+// Client -> server: one byte per tick, the key state (Arena.IN_*); the server uses the latest.
+// Server -> client: frames of  int length | byte type | payload  (length counts type + payload)
+//   WELCOME   varint player id
+//   SNAPSHOT  varint tick, then every entity that changed since the last snapshot sent to this
+//             client, in id order:
+//               varint id gap (id - previous id - 1), byte flags,
+//               then for each flagged field, the zigzag varint delta from the old value.
+//             FLAG_REMOVED: the entity is gone and all its fields are back to 0.
+//
+// Entities: ids below Arena.MAX_PLAYERS are players, the rest are enemy store slots. Each entity
+// is FIELDS ints:
+//   X, Y  position in 1/256 cells
+//   A     players: view angle in 1/256 turns | lives << 8;  enemies: EnemyType ordinal
+//   S     players: score;  enemies: hp
+// Deltas can be taken against whatever the client already has because TCP delivers every frame
+// in order. A frame that does not fit a client's send buffer is dropped whole, and the next one
+// is encoded against the older state instead.
+public class ArenaProtocol {
+    public static final byte WELCOME = 1, SNAPSHOT = 2;
+    public static final int FLAG_REMOVED = 1, FLAG_X = 2, FLAG_Y = 4, FLAG_A = 8, FLAG_S = 16;
+    public static final int X = 0, Y = 1, A = 2, S = 3, FIELDS = 4;
+    public static final int ENTITIES = Arena.MAX_PLAYERS + Arena.MAX_ENEMIES;
+    // Worst case per entity: id gap (2) + flags (1) + 4 fields (5 each)
+    public static final int MAX_FRAME_BYTES = 4 + 1 + 5 + ENTITIES * (3 + FIELDS * 5);
+
+    // Copies the arena into state (ENTITIES * FIELDS ints); absent entities are all 0
+    public static void capture(Arena arena, int[] state, boolean[] present) {
+        for (int id = 0; id < Arena.MAX_PLAYERS; id++) {
+            int o = id * FIELDS;
+            present[id] = arena.active[id];
+            if (!present[id]) {
+                state[o + X] = state[o + Y] = state[o + A] = state[o + S] = 0;
+                continue;
+            }
+            int angle = (int) Math.round(Math.atan2(arena.dirY[id], arena.dirX[id]) / (2 * Math.PI) * 256) & 0xFF;
+            state[o + X] = (int) Math.round(arena.x[id] * 256);
+            state[o + Y] = (int) Math.round(arena.y[id] * 256);
+            state[o + A] = angle | (arena.lives[id] << 8);
+            state[o + S] = arena.score[id];
+        }
+        EnemyStore st = arena.enemies;
+        for (int i = 0; i < Arena.MAX_ENEMIES; i++) {
+            int id = Arena.MAX_PLAYERS + i;
+            int o = id * FIELDS;
+            present[id] = i < st.highWater && st.isAlive(i);
+            if (!present[id]) {
+                state[o + X] = state[o + Y] = state[o + A] = state[o + S] = 0;
+                continue;
+            }
+            state[o + X] = (int) Math.round(st.x[i] * 256);
+            state[o + Y] = (int) Math.round(st.y[i] * 256);
+            state[o + A] = st.type[i];
+            state[o + S] = st.hp[i];
+        }
+    }
+
+    // Writes a SNAPSHOT frame with the changes from (base, basePresent) to (cur, curPresent)
+    public static void encodeSnapshot(long tick, int[] cur, boolean[] curPresent,
+                                      int[] base, boolean[] basePresent, ByteBuffer out) {
+        int start = out.position();
+        out.putInt(0); // length, filled in below
+        out.put(SNAPSHOT);
+        putVarint(out, (int) tick);
+        int last = -1;
+        for (int id = 0; id < ENTITIES; id++) {
+            int o = id * FIELDS;
+            int flags;
+            if (!curPresent[id]) {
+                if (!basePresent[id]) continue;
+                flags = FLAG_REMOVED;
+            } else {
+                flags = 0;
+                if (cur[o + X] != base[o + X]) flags |= FLAG_X;
+                if (cur[o + Y] != base[o + Y]) flags |= FLAG_Y;
+                if (cur[o + A] != base[o + A]) flags |= FLAG_A;
+                if (cur[o + S] != base[o + S]) flags |= FLAG_S;
+                if (flags == 0 && basePresent[id]) continue;
+            }
+            putVarint(out, id - last - 1);
+            last = id;
+            out.put((byte) flags);
+            if ((flags & FLAG_X) != 0) putVarint(out, zigzag(cur[o + X] - base[o + X]));
+            if ((flags & FLAG_Y) != 0) putVarint(out, zigzag(cur[o + Y] - base[o + Y]));
+            if ((flags & FLAG_A) != 0) putVarint(out, zigzag(cur[o + A] - base[o + A]));
+            if ((flags & FLAG_S) != 0) putVarint(out, zigzag(cur[o + S] - base[o + S]));
+        }
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    // Applies a SNAPSHOT payload (after the type byte) of the given length; returns its tick
+    public static long applySnapshot(ByteBuffer in, int length, int[] state, boolean[] present) {
+        int end = in.position() + length;
+        long tick = getVarint(in);
+        int id = -1;
+        while (in.position() < end) {
+            id += getVarint(in) + 1;
+            int o = id * FIELDS;
+            int flags = in.get();
+            if ((flags & FLAG_REMOVED) != 0) {
+                present[id] = false;
+                state[o + X] = state[o + Y] = state[o + A] = state[o + S] = 0;
+                continue;
+            }
+            present[id] = true;
+            if ((flags & FLAG_X) != 0) state[o + X] += unzigzag(getVarint(in));
+            if ((flags & FLAG_Y) != 0) state[o + Y] += unzigzag(getVarint(in));
+            if ((flags & FLAG_A) != 0) state[o + A] += unzigzag(getVarint(in));
+            if ((flags & FLAG_S) != 0) state[o + S] += unzigzag(getVarint(in));
+        }
+        return tick;
+    }
+
+    // --- Varints ---
+
+    public static void putVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    // Small negative numbers become small positive ones
+    static int zigzag(int v) { return (v << 1) ^ (v >> 31); }
+    static int unzigzag(int v) { return (v >>> 1) ^ -(v & 1); }
+}
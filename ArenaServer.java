@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+// Authoritative multiplayer server: one thread and one NIO Selector for every client.
+//
+// Each tick it reads whatever input bytes arrived without blocking, runs one Arena tick, and
+// sends every client a SNAPSHOT with only what changed since the last one that client got (see
+// ArenaProtocol). All buffers are allocated when a client connects and reused afterwards; a
+// client that reads too slowly has its snapshots skipped instead of its buffer grown.
+//
+// Usage: java ArenaServer [port=7777] [level=<file>]
+public class ArenaServer {
+    private static final int OUT_BYTES = 4 * ArenaProtocol.MAX_FRAME_BYTES; // per client
+
+    public static final int PHASE_READ = 0, PHASE_SIMULATE = 1, PHASE_SEND = 2;
+    public final FrameTimer timer = new FrameTimer("server",
+            new String[] {"read", "simulate", "send"}, GameConfig.timingCsvPath("server"));
+
+    private static final class Client {
+        final SocketChannel channel;
+        final int id;
+        final ByteBuffer in = ByteBuffer.allocate(256);
+        final ByteBuffer out = ByteBuffer.allocateDirect(OUT_BYTES); // kept in fill mode
+        // What this client has been sent so far
+        final int[] base = new int[ArenaProtocol.ENTITIES * ArenaProtocol.FIELDS];
+        final boolean[] basePresent = new boolean[ArenaProtocol.ENTITIES];
+        SelectionKey key;
+
+        Client(SocketChannel channel, int id) {
+            this.channel = channel;
+            this.id = id;
+        }
+    }
+
+    public final Arena arena;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Client[] clients = new Client[Arena.MAX_PLAYERS];
+    private final int[] cur = new int[ArenaProtocol.ENTITIES * ArenaProtocol.FIELDS];
+    private final boolean[] curPresent = new boolean[ArenaProtocol.ENTITIES];
+    private final ByteBuffer frame = ByteBuffer.allocate(ArenaProtocol.MAX_FRAME_BYTES);
+    private final long tickNanos = 1_000_000_000L / GameConfig.TICK_RATE;
+    private volatile boolean running;
+
+    // --- Stats (server thread) ---
+    public long ticks, totalTickNanos, maxTickNanos;
+    public long bytesSent, framesSkipped;
+
+    public ArenaServer(LevelGrid map, int port, long seed) throws IOException {
+        arena = new Arena(map, seed);
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    // Runs ticks at TICK_RATE until stop(); everything still buffered is flushed before it returns
+    public void run() {
+        running = true;
+        long next = System.nanoTime();
+        while (running) {
+            tick();
+            next += tickNanos;
+            long wait = next - System.nanoTime();
+            if (wait < -tickNanos) next = System.nanoTime(); // fell behind: don't burst to catch up
+            GameLoop.waitNanos(wait);
+        }
+        flushAll(1_000_000_000L);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public void close() throws IOException {
+        timer.close();
+        for (Client c : clients) {
+            if (c != null) c.channel.close();
+        }
+        server.close();
+        selector.close();
+    }
+
+    public void tick() {
+        long start = System.nanoTime();
+        timer.begin();
+        try {
+            selector.selectNow();
+        } catch (IOException e) {
+            System.err.println("Selector failed: " + e.getMessage());
+        }
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) accept();
+            else {
+                Client c = (Client) key.attachment();
+                if (key.isReadable()) read(c);
+                if (key.isValid() && key.isWritable()) flush(c);
+            }
+        }
+        timer.mark(PHASE_READ);
+
+        arena.tick();
+        ArenaProtocol.capture(arena, cur, curPresent);
+        timer.mark(PHASE_SIMULATE);
+
+        for (Client c : clients) {
+            if (c == null) continue;
+            frame.clear();
+            ArenaProtocol.encodeSnapshot(arena.tick, cur, curPresent, c.base, c.basePresent, frame);
+            frame.flip();
+            if (c.out.remaining() < frame.remaining()) {
+                framesSkipped++; // the client keeps its old base; the next delta covers both ticks
+            } else {
+                c.out.put(frame);
+                System.arraycopy(cur, 0, c.base, 0, cur.length);
+                System.arraycopy(curPresent, 0, c.basePresent, 0, curPresent.length);
+            }
+            flush(c);
+        }
+        timer.mark(PHASE_SEND);
+        timer.end();
+
+        long took = System.nanoTime() - start;
+        ticks++;
+        totalTickNanos += took;
+        if (took > maxTickNanos) maxTickNanos = took;
+    }
+
+    private void accept() {
+        try {
+            SocketChannel ch;
+            while ((ch = server.accept()) != null) {
+                int id = arena.join();
+                if (id < 0) { // full
+                    ch.close();
+                    continue;
+                }
+                ch.configureBlocking(false);
+                ch.socket().setTcpNoDelay(true);
+                Client c = new Client(ch, id);
+                c.key = ch.register(selector, SelectionKey.OP_READ, c);
+                clients[id] = c;
+                c.out.putInt(0); // length, filled in below
+                c.out.put(ArenaProtocol.WELCOME);
+                ArenaProtocol.putVarint(c.out, id);
+                c.out.putInt(0, c.out.position() - 4);
+            }
+        } catch (IOException e) {
+            System.err.println("Accept failed: " + e.getMessage());
+        }
+    }
+
+    private void read(Client c) {
+        try {
+            int n = c.channel.read(c.in);
+            if (n < 0) {
+                disconnect(c);
+                return;
+            }
+            if (c.in.position() > 0) {
+                arena.setInput(c.id, c.in.get(c.in.position() - 1)); // only the latest state matters
+                c.in.clear();
+            }
+        } catch (IOException e) {
+            disconnect(c);
+        }
+    }
+
+    private void flush(Client c) {
+        if (c.out.position() == 0) return;
+        try {
+            c.out.flip();
+            int n = c.channel.write(c.out);
+            bytesSent += n;
+            c.out.compact();
+            // Ask for OP_WRITE only while something is left over
+            int ops = (c.out.position() > 0) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (c.key.interestOps() != ops) c.key.interestOps(ops);
+        } catch (IOException e) {
+            disconnect(c);
+        }
+    }
+
+    // Keeps writing until every client's buffer is empty or the time is up
+    private void flushAll(long timeoutNanos) {
+        long end = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < end) {
+            boolean pending = false;
+            for (Client c : clients) {
+                if (c == null) continue;
+                flush(c);
+                if (c.out.position() > 0) pending = true;
+            }
+            if (!pending) return;
+            Thread.yield();
+        }
+    }
+
+    private void disconnect(Client c) {
+        clients[c.id] = null;
+        arena.leave(c.id);
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+    }
+
+    // True if the given arrays hold exactly what the server last sent to that player (for tests)
+    public boolean clientInSync(int id, int[] state, boolean[] present) {
+        Client c = clients[id];
+        return c != null && java.util.Arrays.equals(c.base, state) && java.util.Arrays.equals(c.basePresent, present);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 7777;
+        String level = GameConfig.LEVEL;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "port": port = Integer.parseInt(kv[1]); break;
+                case "level": level = kv[1]; break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+        LevelGrid map = (level == null) ? LevelGrid.createDefault() : LevelGrid.load(level);
+        ArenaServer server = new ArenaServer(map, port, System.nanoTime());
+        System.out.println("Arena server on 127.0.0.1:" + server.port());
+        // Runs until killed; write out the rest of the timing CSV then
+        Runtime.getRuntime().addShutdownHook(new Thread(server.timer::close, "server-timings"));
+        server.run();
+    }
+}
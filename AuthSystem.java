@@ -1,14 +1,24 @@
 import java.io.*;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AuthSystem {
     private static final String FILE_PATH = "users.txt";
+    private static final String JOURNAL_PATH = "users.journal"; // changes since users.txt was last written
+    private static final String DB_PATH = "users.db"; // binary store, used instead of the text files when present
+    private static final int COPY_CHUNK = 4096; // store slots copied per lock hold by the leaderboard build
     
     // Class to hold password and highscore
     private static class UserRecord {
-        String password;
-        int highscore;
+        final String password;
+        volatile int highscore; // read without the lock by the journal's compaction
+        int rankNode; // this user's node in the leaderboard, 0 = not in it yet
 
         UserRecord(String password, int highscore) {
             this.password = password;
@@ -16,68 +26,319 @@ public class AuthSystem {
         }
     }
 
-    private HashMap<String, UserRecord> userDatabase = new HashMap<>(); // Maps username to an instance of above class
+    // Maps username to an instance of above class. Changed under the AuthSystem lock; concurrent so
+    // the journal's compaction can copy it without the lock (and without blocking the game thread).
+    private final ConcurrentHashMap<String, UserRecord> userDatabase = new ConcurrentHashMap<>();
+    private final UserJournal journal;
+    // When users.db exists, users are looked up in the mapped store instead and userDatabase stays empty
+    private final UserStore store;
+    private Leaderboard leaderboard; // null until built in the background, see buildLeaderboard()
+    private int[] slotNode;          // with the store: leaderboard node of each slot
+    private ArrayList<String> changedDuringBuild; // users to re-rank once the build is done
 
     public AuthSystem() {
-        loadUsers();
+        this(true);
     }
 
-    // Takes the file and loads it into the hashmap
+    // useStore = false always reads the text files (for the migration)
+    AuthSystem(boolean useStore) {
+        store = useStore ? openStore() : null;
+        if (store != null) {
+            journal = null;
+            Runtime.getRuntime().addShutdownHook(new Thread(store::force, "user-store-flush"));
+        } else {
+            loadUsers();
+            // Changes are only queued here; the journal's own thread writes them to disk
+            journal = new UserJournal(new File(JOURNAL_PATH), new File(FILE_PATH), this::snapshotLines);
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "user-journal-flush"));
+        }
+        startLeaderboardBuild();
+    }
+
+    private static UserStore openStore() {
+        if (!new File(DB_PATH).exists()) return null;
+        try {
+            return UserStore.open(DB_PATH);
+        } catch (IOException e) {
+            System.err.println("Error opening user database, using " + FILE_PATH + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Takes the file and loads it into the hashmap, then replays the journal on top
     private void loadUsers() {
         File file = new File(FILE_PATH);
-        if (!file.exists()) return;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(":");
-                if (parts.length == 3) {
-                    String user = parts[0];
-                    String pass = parts[1];
-                    int score = Integer.parseInt(parts[2]);
-                    userDatabase.put(user, new UserRecord(pass, score));
+        if (file.exists()) {
+            try (BufferedReader br = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    // user:password:score, where the password may itself contain ':'
+                    int first = line.indexOf(':'), last = line.lastIndexOf(':');
+                    if (first > 0 && last > first) {
+                        String user = line.substring(0, first);
+                        String pass = line.substring(first + 1, last);
+                        int score = Integer.parseInt(line.substring(last + 1));
+                        userDatabase.put(user, new UserRecord(pass, score));
+                    }
                 }
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error loading user database: " + e.getMessage());
             }
-        } catch (IOException | NumberFormatException e) {
-            System.err.println("Error loading user database: " + e.getMessage());
         }
+        UserJournal.replay(new File(JOURNAL_PATH), this::applyJournalEntry);
     }
 
-    public boolean register(String username, String password) {
-        if (userDatabase.containsKey(username) || username.contains(":")) return false;
+    // "R:user:password" registers, "S:user:score" raises a highscore. Both can be applied twice
+    // without harm. A half-written line from a crash never gets here: replay drops it.
+    private void applyJournalEntry(String line) {
+        String[] parts = line.split(":", 3);
+        if (parts.length != 3) return;
+        if (parts[0].equals("R")) {
+            userDatabase.putIfAbsent(parts[1], new UserRecord(parts[2], 0));
+        } else if (parts[0].equals("S")) {
+            UserRecord record = userDatabase.get(parts[1]);
+            try {
+                int score = Integer.parseInt(parts[2]);
+                if (record != null && score > record.highscore) record.highscore = score;
+            } catch (NumberFormatException e) {
+                // not a score, skip it
+            }
+        }
+    }
+
+    public synchronized boolean register(String username, String password) {
+        if (username.contains(":")) return false;
+        if (store != null) return registerInStore(username, password);
+        if (userDatabase.containsKey(username)) return false;
         
         userDatabase.put(username, new UserRecord(password, 0));
-        saveAllUsers();
+        rankChanged(username);
+        journal.append("R:" + username + ":" + password);
         return true;
     }
 
-    public boolean login(String username, String password) {
+    private boolean registerInStore(String username, String password) {
+        int capacity = store.capacity();
+        int slot;
+        try {
+            slot = store.insert(username, password);
+        } catch (IOException e) {
+            System.err.println("Error growing user database: " + e.getMessage());
+            return false;
+        }
+        if (slot < 0) return false;
+        if (store.capacity() != capacity && leaderboard != null) {
+            // The table grew and every user moved to a new slot
+            slotNode = new int[store.capacity()];
+            for (int node = 1; node <= leaderboard.size(); node++) slotNode[store.find(leaderboard.nameOf(node))] = node;
+        }
+        rankChanged(username);
+        return true;
+    }
+
+    public synchronized boolean login(String username, String password) {
+        if (store != null) {
+            int slot = store.find(username);
+            return slot >= 0 && store.checkPassword(slot, password);
+        }
         UserRecord record = userDatabase.get(username);
         return record != null && record.password.equals(password);
     }
 
-    public int getHighScore(String username) {
+    public synchronized int getHighScore(String username) {
+        if (store != null) {
+            int slot = store.find(username);
+            return (slot >= 0) ? store.getScore(slot) : 0;
+        }
         UserRecord record = userDatabase.get(username);
         return (record != null) ? record.highscore : 0;
     }
 
-    public void updateHighScore(String username, int newScore) {
+    // Called from the game thread, so it must never touch the disk
+    // (the store only writes into its mapping; the OS writes the page back later)
+    public synchronized void updateHighScore(String username, int newScore) {
+        if (store != null) {
+            int slot = store.find(username);
+            if (slot >= 0 && newScore > store.getScore(slot)) {
+                store.setScore(slot, newScore);
+                rankChanged(username);
+            }
+            return;
+        }
         UserRecord record = userDatabase.get(username);
         if (record != null && newScore > record.highscore) {
             record.highscore = newScore;
-            saveAllUsers(); // Persist changes immediately
+            rankChanged(username);
+            journal.append("S:" + username + ":" + newScore);
         }
     }
 
-    // Rewrites the file to ensure data integrity
-    private void saveAllUsers() {
-        try (PrintWriter out = new PrintWriter(new FileWriter(FILE_PATH))) {
+    // --- Leaderboard ---
+
+    private void startLeaderboardBuild() {
+        changedDuringBuild = new ArrayList<>();
+        Thread builder = new Thread(this::buildLeaderboard, "leaderboard-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    // Runs on its own thread so neither startup nor the game waits for it: copies every score
+    // without holding the lock for more than COPY_CHUNK slots at a time, sorts and builds
+    // without it, then installs the result under the lock and re-ranks the users that changed
+    // since the build started. Until then rankings are simply not available.
+    private void buildLeaderboard() {
+        String[] names = new String[16];
+        int[] scores = new int[16];
+        int[] slots = null;
+        UserRecord[] records = null;
+        int capacity = 0;
+        int n = 0;
+        if (store != null) {
+            // The store is read under the lock, a chunk at a time; if it grows in between, every
+            // user moves to a new slot and the copy starts over
+            slots = new int[16];
+            int slot = 0;
+            while (true) {
+                synchronized (this) {
+                    if (slot == 0) capacity = store.capacity();
+                    if (store.capacity() != capacity) {
+                        slot = n = 0;
+                        continue;
+                    }
+                    if (slot >= capacity) break;
+                    for (int end = Math.min(capacity, slot + COPY_CHUNK); slot < end; slot++) {
+                        if (!store.isUsed(slot)) continue;
+                        if (n == names.length) {
+                            names = Arrays.copyOf(names, 2 * n);
+                            scores = Arrays.copyOf(scores, 2 * n);
+                            slots = Arrays.copyOf(slots, 2 * n);
+                        }
+                        names[n] = store.nameAt(slot);
+                        scores[n] = store.getScore(slot);
+                        slots[n++] = slot;
+                    }
+                }
+            }
+        } else {
+            // The map can be read without the lock (see userDatabase); a user added or raised
+            // meanwhile is in changedDuringBuild as well
+            records = new UserRecord[16];
             for (Map.Entry<String, UserRecord> entry : userDatabase.entrySet()) {
-                UserRecord r = entry.getValue();
-                out.println(entry.getKey() + ":" + r.password + ":" + r.highscore);
+                if (n == names.length) {
+                    names = Arrays.copyOf(names, 2 * n);
+                    scores = Arrays.copyOf(scores, 2 * n);
+                    records = Arrays.copyOf(records, 2 * n);
+                }
+                names[n] = entry.getKey();
+                scores[n] = entry.getValue().highscore;
+                records[n++] = entry.getValue();
             }
-        } catch (IOException e) {
-            System.err.println("Error saving user database: " + e.getMessage());
         }
+
+        Leaderboard board = new Leaderboard(n);
+        board.addAll(names, scores, n); // names[i] gets node i + 1
+
+        synchronized (this) {
+            if (store != null) {
+                boolean moved = store.capacity() != capacity; // grew while building
+                slotNode = new int[store.capacity()];
+                for (int i = 0; i < n; i++) slotNode[moved ? store.find(names[i]) : slots[i]] = i + 1;
+            } else {
+                for (int i = 0; i < n; i++) records[i].rankNode = i + 1;
+            }
+            leaderboard = board;
+            for (String user : changedDuringBuild) applyRank(user);
+            changedDuringBuild = null;
+        }
+    }
+
+    // Call after a user is added or their score rises
+    private void rankChanged(String username) {
+        if (leaderboard != null) applyRank(username);
+        else if (changedDuringBuild != null) changedDuringBuild.add(username);
+    }
+
+    private void applyRank(String username) {
+        if (store != null) {
+            int slot = store.find(username);
+            if (slot < 0) return;
+            if (slotNode[slot] == 0) slotNode[slot] = leaderboard.add(username, store.getScore(slot));
+            else leaderboard.update(slotNode[slot], store.getScore(slot));
+            return;
+        }
+        UserRecord record = userDatabase.get(username);
+        if (record == null) return;
+        if (record.rankNode == 0) record.rankNode = leaderboard.add(username, record.highscore);
+        else leaderboard.update(record.rankNode, record.highscore);
+    }
+
+    // Leaderboard node of a user, 0 if unknown or the leaderboard is not built yet
+    private int rankNode(String username) {
+        if (leaderboard == null) return 0;
+        if (store != null) {
+            int slot = store.find(username);
+            return (slot >= 0) ? slotNode[slot] : 0;
+        }
+        UserRecord record = userDatabase.get(username);
+        return (record != null) ? record.rankNode : 0;
+    }
+
+    // 1 = best; 0 for an unknown user or while the leaderboard is still being built
+    public synchronized int getRank(String username) {
+        int node = rankNode(username);
+        return (node != 0) ? leaderboard.rank(node) : 0;
+    }
+
+    public synchronized int getUserCount() {
+        return (store != null) ? store.size() : userDatabase.size();
+    }
+
+    // Fills up to names.length entries starting at firstRank (1 = best); returns how many
+    public synchronized int getLeaderboard(int firstRank, String[] names, int[] scores) {
+        return (leaderboard != null) ? leaderboard.page(firstRank, names, scores) : 0;
+    }
+
+    // Fills a page with the user near its middle; returns the rank of the first entry, 0 for an unknown user
+    public synchronized int getLeaderboardAround(String username, String[] names, int[] scores) {
+        int node = rankNode(username);
+        if (node == 0) return 0;
+        int first = leaderboard.pageAround(node, names.length);
+        leaderboard.page(first, names, scores);
+        return first;
+    }
+
+    // The whole database in users.txt format, for the journal's compaction. Runs on the journal's
+    // thread without the lock: a change made while it copies is also still queued in the journal
+    // (appended after the change, written after this compaction), so nothing is lost.
+    private List<String> snapshotLines() {
+        List<String> lines = new ArrayList<>(userDatabase.size());
+        for (Map.Entry<String, UserRecord> entry : userDatabase.entrySet()) {
+            UserRecord r = entry.getValue();
+            lines.add(entry.getKey() + ":" + r.password + ":" + r.highscore);
+        }
+        return lines;
+    }
+
+    // Converts users.txt plus any journal into users.db (run through "java UserStore migrate").
+    // Afterwards the game uses users.db and leaves the text files alone.
+    static void migrateToStore() throws IOException {
+        if (new File(DB_PATH).exists()) throw new IOException(DB_PATH + " already exists");
+        AuthSystem text = new AuthSystem(false);
+        String tmp = DB_PATH + ".tmp";
+        UserStore db = UserStore.create(tmp, text.userDatabase.size() * 2);
+        int skipped = 0;
+        for (Map.Entry<String, UserRecord> entry : text.userDatabase.entrySet()) {
+            int slot = db.insert(entry.getKey(), entry.getValue().password);
+            if (slot < 0) {
+                System.err.println("Skipping " + entry.getKey() + ": name or password longer than "
+                        + UserStore.MAX_NAME + " bytes");
+                skipped++;
+                continue;
+            }
+            db.setScore(slot, entry.getValue().highscore);
+        }
+        db.force();
+        Files.move(new File(tmp).toPath(), new File(DB_PATH).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Migrated " + db.size() + " users to " + DB_PATH + (skipped > 0 ? ", skipped " + skipped : ""));
     }
-}
\ No newline at end of file
+}
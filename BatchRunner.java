@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+
+// Headless batch simulation: plays many bot-driven matches as fast as the CPU allows, spread
+// over all cores, and prints aggregate statistics. Used for balancing enemy types.
+//
+// Every match has its own GameState with a seeded Random, a simulation clock that advances
+// 1/TICK_RATE seconds per tick, and no AuthSystem (nothing is read or written). Match i uses
+// seed + i, so the same arguments always give the same results, whatever the thread count.
+//
+// Usage:
+//   java BatchRunner [matches=1000] [threads=<cores>] [maxSeconds=600] [seed=1] [level=<file>] [store=false]
+public class BatchRunner {
+    // Advances by whole ticks; starts well above 0 so "last hit" times of 0 are long ago
+    private static final class SimClock implements LongSupplier {
+        long tick;
+
+        @Override
+        public long getAsLong() {
+            return 1_000_000L + tick * 1000L / GameConfig.TICK_RATE;
+        }
+    }
+
+    private static final class Result {
+        long ticks;
+        int score;
+        boolean died;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int matches = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxSeconds = 600;
+        long seed = 1;
+        String level = null;
+        boolean store = false;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "matches": matches = Integer.parseInt(kv[1]); break;
+                case "threads": threads = Integer.parseInt(kv[1]); break;
+                case "maxSeconds": maxSeconds = Integer.parseInt(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                case "level": level = kv[1]; break;
+                case "store": store = Boolean.parseBoolean(kv[1]); break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+
+        LevelGrid map = loadLevel(level); // shared: matches only read it
+        long maxTicks = (long) maxSeconds * GameConfig.TICK_RATE;
+        boolean useStore = store;
+        long baseSeed = seed;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>(matches);
+        long start = System.nanoTime();
+        for (int i = 0; i < matches; i++) {
+            long matchSeed = baseSeed + i;
+            futures.add(pool.submit(() -> play(map, matchSeed, maxTicks, useStore)));
+        }
+        Result[] results = new Result[matches];
+        for (int i = 0; i < matches; i++) results[i] = futures.get(i).get();
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        report(results, wallSeconds, threads, maxSeconds);
+    }
+
+    private static LevelGrid loadLevel(String path) throws IOException {
+        return (path == null || path.isEmpty()) ? LevelGrid.createDefault() : LevelGrid.load(path);
+    }
+
+    // One match from spawn to game over (or maxTicks)
+    static Result play(LevelGrid map, long seed, long maxTicks, boolean enemyStore) {
+        SimClock clock = new SimClock();
+        GameState state = new GameState(null, "bot", new Random(seed), map, clock);
+        if (enemyStore) {
+            state.useEnemyStore(64);
+            state.spawnEnemies();
+        }
+        InputHandler input = new InputHandler();
+        state.input = input;
+        InputSource bot = new BotInput(seed * 31 + 7);
+
+        while (!state.isGameOver && clock.tick < maxTicks) {
+            bot.next(state, input);
+            state.update(input);
+            clock.tick++;
+        }
+        state.tickTimer.close();
+        Result r = new Result();
+        r.ticks = clock.tick;
+        r.score = state.currentScore;
+        r.died = state.isGameOver;
+        return r;
+    }
+
+    private static void report(Result[] results, double wallSeconds, int threads, int maxSeconds) {
+        int n = results.length;
+        long totalTicks = 0;
+        int deaths = 0;
+        double[] survival = new double[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            totalTicks += results[i].ticks;
+            if (results[i].died) deaths++;
+            survival[i] = results[i].ticks / (double) GameConfig.TICK_RATE;
+            scores[i] = results[i].score;
+        }
+        System.out.printf("%d matches on %d threads in %.2f s: %.0f ticks/s (%.1fx real time)%n",
+                n, threads, wallSeconds, totalTicks / wallSeconds, totalTicks / wallSeconds / GameConfig.TICK_RATE);
+        System.out.printf("%d died, %d survived the %d s limit%n", deaths, n - deaths, maxSeconds);
+        System.out.printf("%-14s %9s %9s %9s %9s %9s %9s%n", "", "mean", "min", "p10", "p50", "p90", "max");
+        printRow("survival (s)", survival);
+        printRow("score", scores);
+        System.out.println("survival histogram:");
+        printHistogram(survival, 10);
+        long checksum = 0;
+        for (Result r : results) checksum = checksum * 31 + r.ticks * 1_000_003L + r.score;
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    private static void printRow(String name, double[] values) {
+        double[] v = values.clone();
+        Arrays.sort(v);
+        double sum = 0;
+        for (double x : v) sum += x;
+        System.out.printf("%-14s %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, sum / v.length,
+                v[0], percentile(v, 10), percentile(v, 50), percentile(v, 90), v[v.length - 1]);
+    }
+
+    private static double percentile(double[] sorted, int p) {
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    private static void printHistogram(double[] values, int buckets) {
+        double max = 0;
+        for (double x : values) max = Math.max(max, x);
+        double width = Math.max(1e-9, max / buckets);
+        int[] counts = new int[buckets];
+        for (double x : values) counts[Math.min(buckets - 1, (int) (x / width))]++;
+        int most = Arrays.stream(counts).max().orElse(1);
+        for (int b = 0; b < buckets; b++) {
+            int bar = (int) Math.round(50.0 * counts[b] / Math.max(1, most));
+            System.out.printf("  %7.1f - %7.1f %6d %s%n", b * width, (b + 1) * width, counts[b], "#".repeat(bar));
+        }
+    }
+}
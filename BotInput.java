@@ -0,0 +1,67 @@
+import java.util.Random;
+
+// Simple scripted player for headless matches: turns toward the nearest enemy, fires when it
+// is lined up, backs off when it gets close and walks toward it when far away. A little seeded
+// randomness keeps matches from all playing out the same.
+public class BotInput implements InputSource {
+    private static final double TOO_CLOSE = 2.5, TOO_FAR = 7.0;
+
+    private final Random rand;
+    private int wanderTicks; // > 0 while wandering in a random direction
+    private boolean wanderLeft;
+
+    public BotInput(long seed) {
+        rand = new Random(seed);
+    }
+
+    @Override
+    public void next(GameState state, InputHandler input) {
+        input.up = input.down = input.rotateLeft = input.rotateRight = input.shooting = false;
+        if (state.isGameOver) return;
+
+        // Nearest enemy
+        double bestDist = Double.MAX_VALUE, tx = 0, ty = 0, size = 1;
+        EnemyStore store = state.enemyStore;
+        if (store != null) {
+            for (int i = 0; i < store.highWater; i++) {
+                if (!store.isAlive(i)) continue;
+                double d = dist2(state, store.x[i], store.y[i]);
+                if (d < bestDist) { bestDist = d; tx = store.x[i]; ty = store.y[i]; size = store.typeOf(i).size; }
+            }
+        } else {
+            for (int i = 0; i < state.enemies.size(); i++) {
+                Enemy e = state.enemies.get(i);
+                double d = dist2(state, e.x, e.y);
+                if (d < bestDist) { bestDist = d; tx = e.x; ty = e.y; size = e.getSize(); }
+            }
+        }
+        if (bestDist == Double.MAX_VALUE) return;
+
+        if (wanderTicks > 0) {
+            wanderTicks--;
+            input.up = true;
+            if (wanderLeft) input.rotateLeft = true;
+            else input.rotateRight = true;
+            return;
+        }
+        if (rand.nextInt(600) == 0) { // now and then, wander off for a second
+            wanderTicks = 60;
+            wanderLeft = rand.nextBoolean();
+        }
+
+        double dx = tx - state.posX, dy = ty - state.posY;
+        double ahead = dx * state.dirX + dy * state.dirY;
+        double side = state.dirX * dy - state.dirY * dx; // > 0: enemy is to the left
+        if (ahead > 0 && Math.abs(side) < size * 0.4) input.shooting = true;
+        else if (side > 0 || ahead <= 0) input.rotateLeft = true;
+        else input.rotateRight = true;
+
+        double dist = Math.sqrt(bestDist);
+        if (dist < TOO_CLOSE) input.down = true;
+        else if (dist > TOO_FAR) input.up = true;
+    }
+
+    private static double dist2(GameState state, double x, double y) {
+        return (x - state.posX) * (x - state.posX) + (y - state.posY) * (y - state.posY);
+    }
+}
@@ -2,9 +2,16 @@ import java.awt.Color;
 
 public abstract class Enemy implements Comparable<Enemy> {
     public double x, y;
+    public double prevX, prevY; // position at the end of the previous tick (for interpolation)
     public double distToPlayer;
     public int hp;
     public long lastHitTime;
+
+    // Bookkeeping for GameState.enemyGrid and hitscan
+    int gridCell = -1;
+    Enemy gridPrev, gridNext;
+    int shotStamp;
+    int lastTick = -1; // EnemyScheduler: tick of the last update, -1 = not seen yet
     
     protected double speed;
     protected double size;
@@ -14,9 +21,41 @@ public abstract class Enemy implements Comparable<Enemy> {
     public Enemy(double x, double y) {
         this.x = x;
         this.y = y;
+        this.prevX = x;
+        this.prevY = y;
+    }
+
+    protected Enemy(double x, double y, EnemyType type) {
+        this(x, y);
+        this.speed = type.speed; this.size = type.size; this.hp = type.hp;
+        this.color = type.color; this.points = type.points;
+    }
+
+    // One tick of movement
+    public void update(GameState state) {
+        update(state, 1);
     }
 
-    public abstract void update(GameState state);
+    // ticks > 1 covers several ticks in one step (see EnemyScheduler); kept small enough
+    // that a step never crosses a whole cell
+    public abstract void update(GameState state, int ticks);
+
+    // Moves toward the player along the shared flow field: head for the centre of the next
+    // cell on the path, or straight at the player when already close or off the field
+    protected void chase(GameState state, int ticks) {
+        double speed = this.speed * ticks;
+        double tx = state.posX, ty = state.posY;
+        int d = state.flowField.direction((int) x, (int) y);
+        if (d >= 0) {
+            tx = (int) x + FlowField.stepX(d) + 0.5;
+            ty = (int) y + FlowField.stepY(d) + 0.5;
+        }
+        double len = Math.sqrt((tx - x) * (tx - x) + (ty - y) * (ty - y));
+        double dx = (tx - x) / (len + 0.01);
+        double dy = (ty - y) / (len + 0.01);
+        if (!state.map.isWall((int)(x + dx * speed), (int)y)) x += dx * speed;
+        if (!state.map.isWall((int)x, (int)(y + dy * speed))) y += dy * speed;
+    }
 
     public double getSize() { return size; }
     public Color getColor() { return color; }
@@ -31,32 +70,22 @@ public abstract class Enemy implements Comparable<Enemy> {
 // Moves quickly toward the player
 class SpeedEnemy extends Enemy {
     public SpeedEnemy(double x, double y) {
-        super(x, y);
-        this.speed = 0.06; this.size = 0.4; this.hp = 20;
-        this.color = Color.GREEN; this.points = 100;
+        super(x, y, EnemyType.SPEED);
     }
     @Override
-    public void update(GameState state) {
-        double dx = (state.posX - x) / (distToPlayer + 0.01);
-        double dy = (state.posY - y) / (distToPlayer + 0.01);
-        if (state.worldMap[(int)(x + dx * speed)][(int)y] == 0) x += dx * speed;
-        if (state.worldMap[(int)x][(int)(y + dy * speed)] == 0) y += dy * speed;
+    public void update(GameState state, int ticks) {
+        chase(state, ticks);
     }
 }
 
 // Moves slower, but more health
 class TankEnemy extends Enemy {
     public TankEnemy(double x, double y) {
-        super(x, y);
-        this.speed = 0.02; this.size = 0.8; this.hp = 100;
-        this.color = Color.RED; this.points = 500;
+        super(x, y, EnemyType.TANK);
     }
     @Override
-    public void update(GameState state) {
-        double dx = (state.posX - x) / (distToPlayer + 0.01);
-        double dy = (state.posY - y) / (distToPlayer + 0.01);
-        if (state.worldMap[(int)(x + dx * speed)][(int)y] == 0) x += dx * speed;
-        if (state.worldMap[(int)x][(int)(y + dy * speed)] == 0) y += dy * speed;
+    public void update(GameState state, int ticks) {
+        chase(state, ticks);
     }
 }
 
@@ -65,20 +94,20 @@ class TankEnemy extends Enemy {
 class BouncerEnemy extends Enemy {
     private double vx, vy;
     public BouncerEnemy(double x, double y) {
-        super(x, y);
-        this.speed = 0.1; this.size = 0.6; this.hp = 40;
-        this.color = Color.MAGENTA; this.points = 300;
-        double angle = Math.random() * Math.PI * 2;
+        this(x, y, Math.random() * Math.PI * 2);
+    }
+    public BouncerEnemy(double x, double y, double angle) {
+        super(x, y, EnemyType.BOUNCER);
         this.vx = Math.cos(angle) * speed;
         this.vy = Math.sin(angle) * speed;
     }
     @Override
-    public void update(GameState state) {
-        double nextX = x + vx;
-        double nextY = y + vy;
-        if (state.worldMap[(int)nextX][(int)y] != 0) vx = -vx;
+    public void update(GameState state, int ticks) {
+        double nextX = x + vx * ticks;
+        double nextY = y + vy * ticks;
+        if (state.map.isWall((int)nextX, (int)y)) vx = -vx;
         else x = nextX;
-        if (state.worldMap[(int)x][(int)nextY] != 0) vy = -vy;
+        if (state.map.isWall((int)x, (int)nextY)) vy = -vy;
         else y = nextY;
     }
 }
\ No newline at end of file
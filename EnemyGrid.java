@@ -0,0 +1,89 @@
+// Uniform grid over the level that buckets enemies by position, so collision and hitscan
+// only look at enemies near the player or along the shot instead of the whole list.
+//
+// Each bucket covers (1 << shift) x (1 << shift) map cells. Small maps use one bucket per
+// cell; big maps use coarser buckets so the head array stays around a million entries.
+// Enemies in a bucket form an intrusive doubly linked list (Enemy.gridPrev/gridNext),
+// so moving or removing an enemy never allocates.
+public class EnemyGrid {
+    private static final long MAX_BUCKETS = 1 << 20;
+
+    public final int shift;
+    public final int bucketsX, bucketsY;
+    private final Enemy[] heads;
+
+    public EnemyGrid(int mapWidth, int mapHeight) {
+        int s = 0;
+        while (((long) (mapWidth >> s) + 1) * ((mapHeight >> s) + 1) > MAX_BUCKETS) s++;
+        shift = s;
+        bucketsX = ((mapWidth - 1) >> s) + 1;
+        bucketsY = ((mapHeight - 1) >> s) + 1;
+        heads = new Enemy[bucketsX * bucketsY];
+    }
+
+    public int bucketOf(double x, double y) {
+        return ((int) x >> shift) * bucketsY + ((int) y >> shift);
+    }
+
+    public Enemy first(int bucket) {
+        return heads[bucket];
+    }
+
+    public void add(Enemy e) {
+        link(e, bucketOf(e.x, e.y));
+    }
+
+    public void remove(Enemy e) {
+        if (e.gridCell < 0) return;
+        if (e.gridPrev != null) e.gridPrev.gridNext = e.gridNext;
+        else heads[e.gridCell] = e.gridNext;
+        if (e.gridNext != null) e.gridNext.gridPrev = e.gridPrev;
+        e.gridPrev = e.gridNext = null;
+        e.gridCell = -1;
+    }
+
+    // Call after an enemy moved; only relinks it when it crossed into another bucket
+    public void move(Enemy e) {
+        int cell = bucketOf(e.x, e.y);
+        if (cell == e.gridCell) return;
+        remove(e);
+        link(e, cell);
+    }
+
+    public void clear() {
+        for (int i = 0; i < heads.length; i++) {
+            for (Enemy e = heads[i]; e != null; ) {
+                Enemy next = e.gridNext;
+                e.gridPrev = e.gridNext = null;
+                e.gridCell = -1;
+                e = next;
+            }
+            heads[i] = null;
+        }
+    }
+
+    private void link(Enemy e, int cell) {
+        Enemy head = heads[cell];
+        e.gridPrev = null;
+        e.gridNext = head;
+        if (head != null) head.gridPrev = e;
+        heads[cell] = e;
+        e.gridCell = cell;
+    }
+
+    // First enemy whose centre is closer than radius to (x, y), or null
+    public Enemy findNear(double x, double y, double radius) {
+        int bx0 = Math.max(0, (int) (x - radius) >> shift), bx1 = Math.min(bucketsX - 1, (int) (x + radius) >> shift);
+        int by0 = Math.max(0, (int) (y - radius) >> shift), by1 = Math.min(bucketsY - 1, (int) (y + radius) >> shift);
+        double r2 = radius * radius;
+        for (int bx = bx0; bx <= bx1; bx++) {
+            for (int by = by0; by <= by1; by++) {
+                for (Enemy e = heads[bx * bucketsY + by]; e != null; e = e.gridNext) {
+                    double dx = e.x - x, dy = e.y - y;
+                    if (dx * dx + dy * dy < r2) return e;
+                }
+            }
+        }
+        return null;
+    }
+}
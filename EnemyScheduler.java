@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+
+// AI level of detail: decides which enemies move on a tick, and how far.
+//
+// Enemies within NEAR cells of the player, or on screen (within Visibility.RADIUS, inside the
+// view cone and with nothing in between), move every tick exactly as before, so collisions and
+// shots near the player see up-to-date positions. The player cell's PVS only skips the line of
+// sight walk for enemies it proves hidden, so the answer is the same whether or not the set has
+// been built yet. Everything else is low priority: it is due every 2, 4 or 8 ticks
+// depending on distance, but at least every maxStep ticks, and when it does move it covers the
+// ticks it missed in one step of at most maxStep ticks (so a step never crosses half a cell).
+// Low-priority enemies are visited round-robin, at most budget of them per tick; ticks a step
+// could not cover (the ones left over by the budget) are kept and caught up on later ticks, so
+// far enemies move as fast as near ones on average.
+//
+// The budget is a number of updates rather than nanoseconds, so a seeded game still plays out
+// the same on any machine (replays, BatchRunner).
+public class EnemyScheduler {
+    static final double NEAR = 6;
+    private static final double MID = 16, FAR = 32;
+    private static final int MAX_STEP = 8;
+
+    private final int budget; // low-priority updates per tick, 0 = no limit
+    private int tick;         // ticks the enemies have been updated on (not counting pauses)
+    private int cursor;       // where the round-robin continues
+
+    // Camera of the current tick, for the view cone test
+    private LevelGrid map;
+    private long[] pvs; // of the player's cell
+    private int cellX, cellY;
+    private double posX, posY, dirX, dirY, planeX, planeY, invDet;
+
+    // --- Stats of the last tick ---
+    public int fullUpdates, lodUpdates;
+
+    public EnemyScheduler(int budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    // Moves the enemies of an object-list game. One pass, starting where the last tick's budget
+    // ran out: near/visible enemies always move, due ones while the budget lasts.
+    public void update(GameState state, ArrayList<Enemy> enemies) {
+        begin(state);
+        int n = enemies.size();
+        int next = cursor;
+        for (int k = 0; k < n; k++) {
+            int i = (cursor + k) % n;
+            Enemy e = enemies.get(i);
+            if (e.lastTick < 0) e.lastTick = tick - 1;
+            double dx = e.x - posX, dy = e.y - posY;
+            int missed = tick - e.lastTick;
+            int cap = maxStep(e.speed);
+            boolean high = isHighPriority(dx, dy, e.size);
+            if (high) {
+                fullUpdates++;
+            } else if (missed >= Math.min(interval(dx, dy), cap) && (budget == 0 || lodUpdates < budget)) {
+                lodUpdates++;
+                next = i + 1;
+            } else {
+                continue;
+            }
+            int step = Math.min(missed, cap);
+            e.distToPlayer = Math.sqrt(dx * dx + dy * dy);
+            e.update(state, step);
+            e.lastTick = high ? tick : e.lastTick + step;
+            state.enemyGrid.move(e);
+        }
+        cursor = next;
+    }
+
+    // Moves the enemies of an EnemyStore game the same way; returns true if one of them touches
+    // the player
+    public boolean update(GameState state, EnemyStore st) {
+        begin(state);
+        LevelGrid map = state.map;
+        FlowField field = state.flowField;
+        boolean touching = false;
+        int n = st.highWater;
+        int next = cursor;
+        for (int k = 0; k < n; k++) {
+            int i = (cursor + k) % n;
+            if (!st.isAlive(i)) continue;
+            if (st.lastTick[i] < 0) st.lastTick[i] = tick - 1;
+            EnemyType t = st.typeOf(i);
+            double dx = st.x[i] - posX, dy = st.y[i] - posY;
+            int missed = tick - st.lastTick[i];
+            int cap = maxStep(t.speed);
+            boolean high = isHighPriority(dx, dy, t.size);
+            if (high) {
+                fullUpdates++;
+            } else if (missed >= Math.min(interval(dx, dy), cap) && (budget == 0 || lodUpdates < budget)) {
+                lodUpdates++;
+                next = i + 1;
+            } else {
+                continue;
+            }
+            int step = Math.min(missed, cap);
+            st.distToPlayer[i] = Math.sqrt(dx * dx + dy * dy);
+            st.move(i, map, field, posX, posY, step);
+            st.lastTick[i] = high ? tick : st.lastTick[i] + step;
+            dx = posX - st.x[i];
+            dy = posY - st.y[i];
+            if (dx * dx + dy * dy < 0.25) touching = true;
+        }
+        cursor = next;
+        return touching;
+    }
+
+    private void begin(GameState state) {
+        tick++;
+        fullUpdates = lodUpdates = 0;
+        map = state.map;
+        cellX = (int) state.posX;
+        cellY = (int) state.posY;
+        pvs = map.visibility().from(cellX, cellY);
+        posX = state.posX; posY = state.posY;
+        dirX = state.dirX; dirY = state.dirY;
+        planeX = state.planeX; planeY = state.planeY;
+        invDet = 1.0 / (planeX * dirY - dirX * planeY);
+    }
+
+    // (dx, dy) = enemy - player
+    private boolean isHighPriority(double dx, double dy, double size) {
+        double d2 = dx * dx + dy * dy;
+        if (d2 < NEAR * NEAR) return true;
+        if (d2 > Visibility.RADIUS * Visibility.RADIUS) return false; // a speck on screen at most
+        if (!Visibility.contains(pvs, cellX, cellY, (int) (posX + dx), (int) (posY + dy))) return false;
+        // Same camera transform as the renderer's sprites, with half a sprite of slack at the edges
+        double depth = invDet * (-planeY * dx + planeX * dy);
+        if (depth <= 0) return false;
+        double side = invDet * (dirY * dx - dirX * dy);
+        if (Math.abs(side) > depth + size) return false;
+        return map.lineOfSight(posX, posY, posX + dx, posY + dy);
+    }
+
+    private int interval(double dx, double dy) {
+        double d2 = dx * dx + dy * dy;
+        if (d2 < MID * MID) return 2;
+        if (d2 < FAR * FAR) return 4;
+        return MAX_STEP;
+    }
+
+    // Most ticks one step may cover for this speed: half a cell at most
+    private static int maxStep(double speed) {
+        return Math.max(1, Math.min(MAX_STEP, (int) (0.5 / speed)));
+    }
+}
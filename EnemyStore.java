@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+// Struct-of-arrays alternative to the ArrayList<Enemy> object graph, for very large waves.
+//
+// Every enemy is a slot index into parallel primitive arrays; the behaviour comes from a
+// switch on its EnemyType instead of a virtual call. Dead slots go onto a free list and are
+// reused by the next spawn, so once the arrays are big enough, spawning and killing whole
+// waves allocates nothing. Slots past highWater have never been used.
+public class EnemyStore {
+    private static final byte FREE = -1;
+    private static final EnemyType[] TYPES = EnemyType.values();
+
+    public double[] x, y, prevX, prevY, distToPlayer;
+    public int[] hp;
+    public long[] lastHitTime;
+    public int[] lastTick; // EnemyScheduler: tick of the last update, -1 = not seen yet
+    public byte[] type; // EnemyType ordinal, FREE for an empty slot
+    private double[] vx, vy; // bouncer velocity
+
+    private int[] free;
+    private int freeCount;
+    public int highWater;
+    public int count;
+
+    public EnemyStore(int capacity) {
+        capacity = Math.max(16, capacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        prevX = new double[capacity];
+        prevY = new double[capacity];
+        distToPlayer = new double[capacity];
+        vx = new double[capacity];
+        vy = new double[capacity];
+        hp = new int[capacity];
+        lastHitTime = new long[capacity];
+        lastTick = new int[capacity];
+        type = new byte[capacity];
+        Arrays.fill(type, FREE);
+        free = new int[capacity];
+    }
+
+    public boolean isAlive(int i) {
+        return type[i] != FREE;
+    }
+
+    public EnemyType typeOf(int i) {
+        return TYPES[type[i]];
+    }
+
+    // Returns the slot of the new enemy; angle is only used by bouncers
+    public int spawn(EnemyType t, double sx, double sy, double angle) {
+        int i;
+        if (freeCount > 0) {
+            i = free[--freeCount];
+        } else {
+            if (highWater == type.length) grow();
+            i = highWater++;
+        }
+        x[i] = sx; y[i] = sy;
+        prevX[i] = sx; prevY[i] = sy;
+        hp[i] = t.hp;
+        lastHitTime[i] = 0;
+        lastTick[i] = -1;
+        distToPlayer[i] = 0;
+        vx[i] = Math.cos(angle) * t.speed;
+        vy[i] = Math.sin(angle) * t.speed;
+        type[i] = (byte) t.ordinal();
+        count++;
+        return i;
+    }
+
+    public void kill(int i) {
+        if (type[i] == FREE) return;
+        type[i] = FREE;
+        free[freeCount++] = i;
+        count--;
+    }
+
+    public void clear() {
+        Arrays.fill(type, 0, highWater, FREE);
+        highWater = 0;
+        freeCount = 0;
+        count = 0;
+    }
+
+    private void grow() {
+        int n = type.length * 2;
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        prevX = Arrays.copyOf(prevX, n);
+        prevY = Arrays.copyOf(prevY, n);
+        distToPlayer = Arrays.copyOf(distToPlayer, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        hp = Arrays.copyOf(hp, n);
+        lastHitTime = Arrays.copyOf(lastHitTime, n);
+        lastTick = Arrays.copyOf(lastTick, n);
+        int old = type.length;
+        type = Arrays.copyOf(type, n);
+        Arrays.fill(type, old, n, FREE);
+        free = Arrays.copyOf(free, n);
+    }
+
+    public void savePrevious() {
+        System.arraycopy(x, 0, prevX, 0, highWater);
+        System.arraycopy(y, 0, prevY, 0, highWater);
+    }
+
+    // Moves every enemy one tick. Returns true if any of them touches the player.
+    public boolean update(GameState state) {
+        LevelGrid map = state.map;
+        FlowField field = state.flowField;
+        double px = state.posX, py = state.posY;
+        boolean touching = false;
+        for (int i = 0; i < highWater; i++) {
+            if (type[i] == FREE) continue;
+            distToPlayer[i] = Math.sqrt((px - x[i]) * (px - x[i]) + (py - y[i]) * (py - y[i]));
+            move(i, map, field, px, py);
+            if ((px - x[i]) * (px - x[i]) + (py - y[i]) * (py - y[i]) < 0.25) touching = true;
+        }
+        return touching;
+    }
+
+    // Moves enemy i one tick toward (px, py): chasers follow the flow field (straight at the
+    // target when field is null or has no direction), bouncers ignore the target
+    public void move(int i, LevelGrid map, FlowField field, double px, double py) {
+        move(i, map, field, px, py, 1);
+    }
+
+    // Same, covering several ticks in one step (see EnemyScheduler)
+    public void move(int i, LevelGrid map, FlowField field, double px, double py, int ticks) {
+        int t = type[i];
+        double ex = x[i], ey = y[i];
+        switch (TYPES[t]) {
+            case SPEED:
+            case TANK:
+            case BIG: {
+                // Same steering as Enemy.chase
+                double speed = TYPES[t].speed * ticks;
+                double tx = px, ty = py;
+                int d = (field != null) ? field.direction((int) ex, (int) ey) : -1;
+                if (d >= 0) {
+                    tx = (int) ex + FlowField.stepX(d) + 0.5;
+                    ty = (int) ey + FlowField.stepY(d) + 0.5;
+                }
+                double len = Math.sqrt((tx - ex) * (tx - ex) + (ty - ey) * (ty - ey)) + 0.01;
+                double dx = (tx - ex) / len * speed, dy = (ty - ey) / len * speed;
+                if (!map.isWall((int) (ex + dx), (int) ey)) ex += dx;
+                if (!map.isWall((int) ex, (int) (ey + dy))) ey += dy;
+                break;
+            }
+            case BOUNCER: {
+                double nextX = ex + vx[i] * ticks, nextY = ey + vy[i] * ticks;
+                if (map.isWall((int) nextX, (int) ey)) vx[i] = -vx[i];
+                else ex = nextX;
+                if (map.isWall((int) ex, (int) nextY)) vy[i] = -vy[i];
+                else ey = nextY;
+                break;
+            }
+        }
+        x[i] = ex;
+        y[i] = ey;
+    }
+
+    // Fires a hitscan shot from the player, stopping at the first wall. Every enemy in line takes
+    // damage; killed enemies are freed. Returns the points scored.
+    public int hitscan(GameState state, int damage, long now) {
+        return hitscan(state.map, state.posX, state.posY, state.dirX, state.dirY, damage, now);
+    }
+
+    // Same for a shot from any position (the arena has several players)
+    public int hitscan(LevelGrid map, double px, double py, double dirX, double dirY, int damage, long now) {
+        double wallDist = map.rayDistance(px, py, dirX, dirY);
+        int points = 0;
+        for (int i = 0; i < highWater; i++) {
+            int t = type[i];
+            if (t == FREE) continue;
+            double dx = x[i] - px, dy = y[i] - py;
+            double dot = dx * dirX + dy * dirY;
+            if (dot <= 0 || dot >= wallDist) continue;
+            if (Math.abs(dx * dirY - dy * dirX) >= TYPES[t].size * 0.5) continue;
+            hp[i] -= damage;
+            lastHitTime[i] = now;
+            if (hp[i] <= 0) {
+                points += TYPES[t].points;
+                kill(i);
+            }
+        }
+        return points;
+    }
+}
@@ -1,15 +1,19 @@
 import java.awt.Color;
 
+// Per-type stats, shared by the Enemy subclasses and the struct-of-arrays EnemyStore
 enum EnemyType {
-    SPEED(0.06, 0.4, 20, Color.GREEN),
-    TANK(0.02, 0.8, 100, Color.RED),
-    BIG(0.035, 1.2, 50, Color.ORANGE);
+    SPEED(0.06, 0.4, 20, Color.GREEN, 100),
+    TANK(0.02, 0.8, 100, Color.RED, 500),
+    BIG(0.035, 1.2, 50, Color.ORANGE, 250),
+    BOUNCER(0.1, 0.6, 40, Color.MAGENTA, 300);
 
     double speed, size;
     int hp;
     Color color;
+    int rgb;
+    int points;
 
-    EnemyType(double s, double sz, int hp, Color c) {
-        this.speed = s; this.size = sz; this.hp = hp; this.color = c;
+    EnemyType(double s, double sz, int hp, Color c, int points) {
+        this.speed = s; this.size = sz; this.hp = hp; this.color = c; this.rgb = c.getRGB(); this.points = points;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+// One shared path field toward the player, used by every chasing enemy.
+//
+// A breadth-first search runs outward from the player's cell (8 directions, no cutting
+// through wall corners) and every reached cell stores which neighbour is one step closer.
+// Enemies then just look up their own cell, so pathing costs one BFS per player move
+// no matter how many enemies there are. The BFS is redone only when the player enters a
+// new cell or the map changes.
+//
+// The field covers a (2 * radius + 1)^2 window around the player, which on the default map
+// is the whole map. Enemies outside the window (or in unreachable cells) get no direction
+// and fall back to walking straight at the player.
+public class FlowField {
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DY = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final byte NONE = -1;
+
+    private final LevelGrid map;
+    private final int radius, size;
+    private final int[] dist;   // BFS steps from the player, -1 = not reached
+    private final byte[] next;  // index into DX/DY of the step toward the player, NONE if unknown
+    private final int[] queue;
+
+    private int originX, originY;             // map cell of window index 0
+    private int playerCellX = -1, playerCellY = -1;
+    private int mapVersion = -1;
+
+    public FlowField(LevelGrid map, int radius) {
+        this.map = map;
+        this.radius = radius;
+        this.size = 2 * radius + 1;
+        dist = new int[size * size];
+        next = new byte[size * size];
+        queue = new int[size * size];
+    }
+
+    // Rebuilds the field if the player moved to another cell; returns true if it did
+    public boolean update(double px, double py) {
+        int cx = (int) px, cy = (int) py;
+        if (cx == playerCellX && cy == playerCellY && map.getVersion() == mapVersion) return false;
+        playerCellX = cx;
+        playerCellY = cy;
+        mapVersion = map.getVersion();
+        originX = cx - radius;
+        originY = cy - radius;
+        build();
+        return true;
+    }
+
+    private void build() {
+        Arrays.fill(dist, -1);
+        Arrays.fill(next, NONE);
+        int head = 0, tail = 0;
+        int start = radius * size + radius;
+        dist[start] = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int i = queue[head++];
+            int lx = i / size, ly = i % size;
+            for (int d = 0; d < 8; d++) {
+                int nx = lx + DX[d], ny = ly + DY[d];
+                if (nx < 0 || ny < 0 || nx >= size || ny >= size) continue;
+                int n = nx * size + ny;
+                if (dist[n] >= 0 || !open(nx, ny) || !canStep(lx, ly, d)) continue;
+                dist[n] = dist[i] + 1;
+                next[n] = (byte) opposite(d); // from n, step back toward i
+                queue[tail++] = n;
+            }
+        }
+    }
+
+    // Diagonal steps need both side cells free so enemies don't clip wall corners
+    private boolean canStep(int lx, int ly, int d) {
+        if (d < 4) return true;
+        return open(lx + DX[d], ly) && open(lx, ly + DY[d]);
+    }
+
+    private boolean open(int lx, int ly) {
+        int mx = originX + lx, my = originY + ly;
+        return map.inside(mx, my) && !map.isWall(mx, my);
+    }
+
+    private static int opposite(int d) {
+        switch (d) {
+            case 0: return 1;
+            case 1: return 0;
+            case 2: return 3;
+            case 3: return 2;
+            case 4: return 7;
+            case 5: return 6;
+            case 6: return 5;
+            default: return 4;
+        }
+    }
+
+    // Step direction from map cell (cx, cy) toward the player as an index for stepX/stepY,
+    // or -1 if the cell is the player's own cell, unreachable or outside the field
+    public int direction(int cx, int cy) {
+        int lx = cx - originX, ly = cy - originY;
+        if (lx < 0 || ly < 0 || lx >= size || ly >= size) return -1;
+        return next[lx * size + ly];
+    }
+
+    public static int stepX(int direction) { return DX[direction]; }
+    public static int stepY(int direction) { return DY[direction]; }
+
+    // BFS steps from map cell (cx, cy) to the player, -1 if unknown
+    public int distance(int cx, int cy) {
+        int lx = cx - originX, ly = cy - originY;
+        if (lx < 0 || ly < 0 || lx >= size || ly >= size) return -1;
+        return dist[lx * size + ly];
+    }
+}
@@ -0,0 +1,43 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+// Everything the renderer needs from one simulation tick, copied out of GameState at the end
+// of the tick. The simulation fills one of these while the renderer reads another, so the two
+// threads never look at the same fields (see SnapshotBuffer). Arrays are reused and only grow.
+public class FrameSnapshot {
+    public long tickNanos; // System.nanoTime() when the tick finished, for interpolation
+    public LevelGrid map;
+
+    // --- Camera (this tick and the previous one) ---
+    public double posX, posY, dirX, dirY, planeX, planeY;
+    public double prevPosX, prevPosY, prevDirX, prevDirY, prevPlaneX, prevPlaneY;
+
+    // --- HUD ---
+    public int lives, currentScore, highScore;
+    public boolean isInvincible, isGameOver, paused;
+    public boolean shootingAction;
+    public int shootFrame;
+    public int rank, rankedUsers, topCount;
+    public final String[] topNames = new String[GameState.TOP_COUNT];
+    public final int[] topScores = new int[GameState.TOP_COUNT];
+
+    // --- Enemies ---
+    public int enemyCount;
+    public double[] x = new double[16], y = new double[16], prevX = new double[16], prevY = new double[16];
+    public double[] size = new double[16];
+    public Color[] color = new Color[16]; // already white while flashing from a hit
+    public int[] id = new int[16];        // index in the enemy list or store, keeps sprite order coherent
+    public int maxId;                     // all ids are below this
+
+    public void ensureEnemyCapacity(int n) {
+        if (x.length >= n) return;
+        int cap = Math.max(16, Integer.highestOneBit(n) * 2);
+        x = Arrays.copyOf(x, cap);
+        y = Arrays.copyOf(y, cap);
+        prevX = Arrays.copyOf(prevX, cap);
+        prevY = Arrays.copyOf(prevY, cap);
+        size = Arrays.copyOf(size, cap);
+        color = Arrays.copyOf(color, cap);
+        id = Arrays.copyOf(id, cap);
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+// Low-overhead per-phase timer for one thread (the render loop or the simulation loop).
+//
+// begin() starts a frame, mark(phase) closes a phase, end() closes the frame. Times go into
+// preallocated histograms (10 us buckets), so recording never allocates. Every WINDOW_NANOS
+// the histograms are turned into p50/p99/max numbers for the overlay and cleared again.
+// If a CSV path is given, every frame is also copied into a ring buffer that a background
+// thread writes out; when the writer falls behind, samples are dropped rather than blocking.
+// close() writes what is still in the ring and closes the file.
+public class FrameTimer {
+    private static final long BUCKET_NANOS = 10_000;
+    private static final int BUCKETS = 10_000; // 10 us .. 100 ms, the last bucket catches the rest
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int RING_FRAMES = 4096;
+
+    private final String name;
+    private final String[] phaseNames; // the last slot is the whole frame
+    private final int total;
+
+    // --- Current window (owner thread only) ---
+    private final int[][] histogram;
+    private final long[] windowMax;
+    private int windowCount;
+    private long windowStart;
+
+    // --- Last finished window (read by the overlay) ---
+    private final long[] p50, p99, max;
+    private volatile int lastCount;
+
+    // --- Current frame ---
+    private final long[] sample;
+    private long frameStart, lastMark;
+    private long frameIndex;
+
+    // --- CSV streaming ---
+    private final long[] ring; // RING_FRAMES rows of (frameIndex, phase times...)
+    private volatile long written, read;
+    private final Thread writer; // null without a CSV path
+    private volatile boolean closed;
+
+    public FrameTimer(String name, String[] phases, String csvPath) {
+        this.name = name;
+        this.phaseNames = new String[phases.length + 1];
+        System.arraycopy(phases, 0, phaseNames, 0, phases.length);
+        phaseNames[phases.length] = "total";
+        this.total = phases.length;
+        int n = phaseNames.length;
+        histogram = new int[n][BUCKETS];
+        windowMax = new long[n];
+        p50 = new long[n];
+        p99 = new long[n];
+        max = new long[n];
+        sample = new long[n];
+        windowStart = System.nanoTime();
+
+        if (csvPath != null) {
+            ring = new long[RING_FRAMES * (n + 1)];
+            writer = new Thread(() -> writeCsv(csvPath), name + "-csv");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            ring = null;
+            writer = null;
+        }
+    }
+
+    public String getName() { return name; }
+    public int phaseCount() { return phaseNames.length; }
+    public String phaseName(int phase) { return phaseNames[phase]; }
+    public int totalPhase() { return total; }
+
+    // Stats of the last finished window, in nanoseconds
+    public long p50(int phase) { return p50[phase]; }
+    public long p99(int phase) { return p99[phase]; }
+    public long max(int phase) { return max[phase]; }
+    public int windowFrames() { return lastCount; }
+
+    public void begin() {
+        frameStart = System.nanoTime();
+        lastMark = frameStart;
+        for (int i = 0; i < sample.length; i++) sample[i] = 0;
+    }
+
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        sample[phase] += now - lastMark;
+        lastMark = now;
+    }
+
+    public void end() {
+        long now = System.nanoTime();
+        sample[total] = now - frameStart;
+        for (int i = 0; i < sample.length; i++) {
+            long t = sample[i];
+            histogram[i][(int) Math.min(BUCKETS - 1, t / BUCKET_NANOS)]++;
+            if (t > windowMax[i]) windowMax[i] = t;
+        }
+        windowCount++;
+        if (ring != null) push();
+        frameIndex++;
+        if (now - windowStart >= WINDOW_NANOS) closeWindow(now);
+    }
+
+    private void closeWindow(long now) {
+        for (int i = 0; i < phaseNames.length; i++) {
+            int[] h = histogram[i];
+            max[i] = windowMax[i];
+            p50[i] = Math.min(max[i], percentile(h, windowCount, 0.50));
+            p99[i] = Math.min(max[i], percentile(h, windowCount, 0.99));
+            windowMax[i] = 0;
+            for (int b = 0; b < BUCKETS; b++) h[b] = 0;
+        }
+        lastCount = windowCount;
+        windowCount = 0;
+        windowStart = now;
+    }
+
+    // Upper edge of the bucket holding the given fraction of the samples
+    private static long percentile(int[] h, int count, double fraction) {
+        if (count == 0) return 0;
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += h[b];
+            if (seen >= target) return (b + 1) * BUCKET_NANOS;
+        }
+        return BUCKETS * BUCKET_NANOS;
+    }
+
+    // --- CSV ---
+
+    // Writes the rows still in the ring and closes the CSV; call once the owner thread has stopped
+    public void close() {
+        if (writer == null) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void push() {
+        if (written - read >= RING_FRAMES) return; // writer is behind: drop this frame
+        int row = sample.length + 1;
+        int base = (int) (written % RING_FRAMES) * row;
+        ring[base] = frameIndex;
+        System.arraycopy(sample, 0, ring, base + 1, sample.length);
+        written++; // volatile write publishes the row
+    }
+
+    private void writeCsv(String path) {
+        int row = sample.length + 1;
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(path))) {
+            out.write("frame");
+            for (String p : phaseNames) out.write("," + p + "_ns");
+            out.newLine();
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                boolean last = closed; // read before draining, so nothing pushed before close() is missed
+                long available = written;
+                while (read < available) {
+                    int base = (int) (read % RING_FRAMES) * row;
+                    line.setLength(0);
+                    line.append(ring[base]);
+                    for (int i = 1; i < row; i++) line.append(',').append(ring[base + i]);
+                    out.write(line.toString());
+                    out.newLine();
+                    read++;
+                }
+                out.flush();
+                if (last) break;
+                LockSupport.parkNanos(250_000_000L);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing timings to " + path + ": " + e.getMessage());
+        }
+    }
+}
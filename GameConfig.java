@@ -0,0 +1,84 @@
+// Startup options, read once from system properties.
+// Example: java -Draycaster.framebuffer=false RaycasterGame
+public class GameConfig {
+    // true = walls/floor/sprites are written as raw pixels into an int[] framebuffer
+    // false = the original Graphics2D path (one drawLine per column)
+    public static final boolean FRAMEBUFFER = bool("raycaster.framebuffer", true);
+
+    // Worker threads for the framebuffer wall pass (1 = serial, on the calling thread)
+    public static final int RENDER_THREADS =
+            Math.max(1, integer("raycaster.threads", Runtime.getRuntime().availableProcessors()));
+
+    // Walls, floor/ceiling and sprites are drawn at this percentage of the window size and
+    // stretched to fit; the HUD is always drawn at full size (see ResolutionScaler)
+    public static final int RENDER_SCALE = Math.max(1, Math.min(100, integer("raycaster.renderScale", 100)));
+    // Frame time in ms to hold by changing the render scale automatically; 0 = keep RENDER_SCALE
+    public static final int FRAME_BUDGET_MS = Math.max(0, integer("raycaster.frameBudget", 0));
+
+    // true = batch ray setup and sprite transforms in SIMD lanes when the vector kernels are
+    // available (see RayKernels); false = always the scalar loops
+    public static final boolean VECTOR = bool("raycaster.vector", true);
+
+    // true = walk the grid only for some wall columns and fill the ones in between that provably
+    // hit the same wall face (same picture, see Renderer); false = one DDA per column. Off by
+    // default: on the bundled maps the DDA is short enough that the checks cost as much as it saves.
+    public static final boolean ADAPTIVE_WALLS = bool("raycaster.adaptiveWalls", false);
+
+    // true = textured walls, floor and ceiling in the framebuffer path (see TextureSet)
+    public static final boolean TEXTURED = bool("raycaster.textured", true);
+    // Directory with wall1.png, wall2.png, ..., floor.png, ceiling.png; null = built-in textures
+    public static final String TEXTURES = System.getProperty("raycaster.textures");
+
+    // --- Game loop ---
+    // Simulation ticks per second (movement speeds are tuned for 60)
+    public static final int TICK_RATE = Math.max(1, integer("raycaster.tickRate", 60));
+    // true = render loop draws into a Canvas BufferStrategy; false = repaint() the Swing panel
+    public static final boolean ACTIVE_RENDERING = bool("raycaster.activeRendering", true);
+    // uncapped, vsync (cap at the display refresh rate) or capped (at FPS_CAP)
+    public static final String FRAME_MODE = System.getProperty("raycaster.frameMode", "vsync");
+    public static final int FPS_CAP = Math.max(1, integer("raycaster.fpsCap", 144));
+
+    // Level file to play (see LevelGrid); null = the built-in map
+    public static final String LEVEL = System.getProperty("raycaster.level");
+
+    // Cells around the player covered by the enemy flow field
+    public static final int FLOW_RADIUS = Math.max(1, integer("raycaster.flowRadius", 64));
+
+    // true = keep enemies in the struct-of-arrays EnemyStore instead of Enemy objects
+    public static final boolean ENEMY_STORE = bool("raycaster.enemyStore", false);
+
+    // true = distant or hidden enemies move less often, in bigger steps (see EnemyScheduler)
+    public static final boolean AI_LOD = bool("raycaster.aiLod", true);
+    // Most distant/hidden enemies moved per tick, 0 = no limit
+    public static final int AI_BUDGET = Math.max(0, integer("raycaster.aiBudget", 128));
+
+    // --- Recording ---
+    // Write every tick's input (and the spawn seed) to this file when the game exits; see InputRecording
+    public static final String RECORD = System.getProperty("raycaster.record");
+    // Play this recording back instead of reading the keyboard (no login, nothing saved)
+    public static final String REPLAY = System.getProperty("raycaster.replay");
+
+    // --- Timing ---
+    // If set, per-frame phase timings are streamed to <prefix>-frame.csv and <prefix>-tick.csv
+    public static final String TIMING_CSV = System.getProperty("raycaster.timingCsv");
+
+    static String timingCsvPath(String timer) {
+        return (TIMING_CSV == null) ? null : TIMING_CSV + "-" + timer + ".csv";
+    }
+
+    static boolean bool(String key, boolean def) {
+        String v = System.getProperty(key);
+        return (v == null) ? def : Boolean.parseBoolean(v.trim());
+    }
+
+    static int integer(String key, int def) {
+        String v = System.getProperty(key);
+        if (v == null) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring bad value for " + key + ": " + v);
+            return def;
+        }
+    }
+}
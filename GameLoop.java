@@ -0,0 +1,167 @@
+import java.awt.Canvas;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs the game on two threads:
+//  - Simulation: fixed timestep. Real time is added to an accumulator and GameState.update
+//    runs once per whole tick, so game speed does not depend on the frame rate.
+//  - Rendering: draws as often as the frame mode allows and interpolates between the last
+//    two ticks. With a Canvas it uses BufferStrategy (active rendering), otherwise it falls
+//    back to repaint() on the Swing panel.
+public class GameLoop {
+    public enum FrameMode { UNCAPPED, VSYNC, CAPPED }
+
+    private static final int MAX_TICKS_PER_FRAME = 5; // after a long stall, drop time instead of catching up
+
+    private final GameState state;
+    private final InputHandler input;
+    private final Renderer renderer;
+    private final Canvas canvas; // null = passive rendering through the Swing panel
+    private final long tickNanos;
+    private final FrameMode frameMode;
+    private final long frameNanos; // 0 = no cap
+
+    // When set, it fills tickInput before every tick (recording, replay) instead of the
+    // keyboard handler being read directly while the EDT may be changing it
+    private InputSource inputSource;
+    private final InputHandler tickInput = new InputHandler();
+
+    private volatile boolean running;
+
+    public GameLoop(GameState state, InputHandler input, Renderer renderer, Canvas canvas) {
+        this(state, input, renderer, canvas, GameConfig.TICK_RATE, parseMode(GameConfig.FRAME_MODE), GameConfig.FPS_CAP);
+    }
+
+    public GameLoop(GameState state, InputHandler input, Renderer renderer, Canvas canvas,
+                    int tickRate, FrameMode frameMode, int fpsCap) {
+        this.state = state;
+        this.input = input;
+        this.renderer = renderer;
+        this.canvas = canvas;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.frameMode = frameMode;
+        if (frameMode == FrameMode.CAPPED) frameNanos = 1_000_000_000L / fpsCap;
+        else if (frameMode == FrameMode.VSYNC) frameNanos = 1_000_000_000L / refreshRate();
+        else frameNanos = 0;
+        renderer.setLoop(this);
+    }
+
+    static FrameMode parseMode(String name) {
+        try {
+            return FrameMode.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown frame mode " + name + ", using vsync");
+            return FrameMode.VSYNC;
+        }
+    }
+
+    // Refresh rate of the main display, 60 if it cannot be read
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return 60;
+        int hz = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return (hz > 0) ? hz : 60;
+    }
+
+    public void setInputSource(InputSource source) {
+        inputSource = source;
+    }
+
+    public void start() {
+        running = true;
+        Thread sim = new Thread(this::simulationLoop, "simulation");
+        Thread draw = new Thread(this::renderLoop, "render");
+        sim.setDaemon(true);
+        draw.setDaemon(true);
+        sim.start();
+        draw.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    // How far the current time is between the tick that finished at tickTime and the next one (0..1)
+    public double interpolation(long tickTime) {
+        double a = (System.nanoTime() - tickTime) / (double) tickNanos;
+        return (a < 0) ? 0 : (a > 1 ? 1 : a);
+    }
+
+    private void simulationLoop() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+            if (accumulator > MAX_TICKS_PER_FRAME * tickNanos) accumulator = MAX_TICKS_PER_FRAME * tickNanos;
+
+            while (accumulator >= tickNanos) {
+                if (inputSource != null) {
+                    inputSource.next(state, tickInput);
+                    state.update(tickInput);
+                } else {
+                    state.update(input); // publishes a FrameSnapshot for the renderer
+                }
+                accumulator -= tickNanos;
+            }
+            // Sleep until the next tick is due
+            waitNanos(tickNanos - accumulator - (System.nanoTime() - now));
+        }
+    }
+
+    private void renderLoop() {
+        BufferStrategy strategy = null;
+        long nextFrame = System.nanoTime();
+        while (running) {
+            if (canvas == null) {
+                renderer.repaint();
+            } else if (canvas.isDisplayable() && canvas.getWidth() > 0) {
+                if (strategy == null) {
+                    canvas.createBufferStrategy(2);
+                    strategy = canvas.getBufferStrategy();
+                }
+                drawFrame(strategy);
+            }
+
+            if (frameNanos > 0) {
+                nextFrame += frameNanos;
+                long wait = nextFrame - System.nanoTime();
+                if (wait < -frameNanos) nextFrame = System.nanoTime(); // fell behind: don't burst to catch up
+                waitNanos(wait);
+            } else if (canvas == null) {
+                waitNanos(1_000_000); // repaint() requests would just be coalesced
+            }
+        }
+    }
+
+    private void drawFrame(BufferStrategy strategy) {
+        // Standard BufferStrategy loop: redraw if the buffer contents were lost or restored
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    renderer.render(g2, canvas.getWidth(), canvas.getHeight());
+                } finally {
+                    g2.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        if (frameMode == FrameMode.VSYNC) Toolkit.getDefaultToolkit().sync();
+    }
+
+    // parkNanos alone can oversleep by a millisecond or more, so the last stretch is spent yielding
+    static void waitNanos(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (true) {
+            long left = end - System.nanoTime();
+            if (left <= 0) return;
+            if (left > 2_000_000) LockSupport.parkNanos(left - 1_000_000);
+            else Thread.yield();
+        }
+    }
+}
@@ -1,46 +1,26 @@
+import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.function.LongSupplier;
 
 public class GameState {
     // --- Constants ---
-    public static final int MAP_WIDTH = 24;
-    public static final int MAP_HEIGHT = 24;
-    private static final double MOVE_SPEED = 0.08;
-    private static final double ROT_SPEED = 0.05;
-
-    // Map: 1 = Wall, 0 = Empty
-    public final int[][] worldMap = {
-        {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,1,1,1,1,1,0,0,0,0,0,0,1,0,0,0,0,0,0,0,1},
-        {1,0,0,0,1,0,0,0,1,0,0,0,0,0,0,1,0,0,0,0,0,0,0,1},
-        {1,0,0,0,1,0,0,0,1,0,0,0,0,0,0,1,1,1,1,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,1,0,0,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,1,0,1,0,1,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,1,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,1,0,1,0,1,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,1,1,1,1,1,1,1,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,1,1,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,1,1,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
-        {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
-    };
+    static final double MOVE_SPEED = 0.08;
+    static final double ROT_SPEED = 0.05;
+
+    // Map: 0 = Empty, anything else = Wall (see LevelGrid)
+    public final LevelGrid map;
 
     // --- Player Position & Camera ---
     public double posX = 22, posY = 12; 
     public double dirX = -1, dirY = 0; 
     public double planeX = 0, planeY = 0.66; 
 
+    // Camera at the end of the previous tick, used by the renderer to interpolate between ticks
+    public double prevPosX = posX, prevPosY = posY;
+    public double prevDirX = dirX, prevDirY = dirY;
+    public double prevPlaneX = planeX, prevPlaneY = planeY;
+
     // --- Player Stats & Status ---
     public int lives = 5;
     public boolean isInvincible = false;
@@ -53,40 +33,136 @@ public class GameState {
     public String currentUsername;
     private AuthSystem auth;
 
+    // Leaderboard for the game over screen, read once when the game ends
+    public static final int TOP_COUNT = 10;
+    public int rank, rankedUsers; // 0 = no leaderboard (no auth)
+    public final String[] topNames = new String[TOP_COUNT];
+    public final int[] topScores = new int[TOP_COUNT];
+    public int topCount;
+
     // --- Weapon Animation ---
     public boolean shootingAction = false; 
     public int shootFrame = 0; 
 
     // --- Enemies ---
     public ArrayList<Enemy> enemies = new ArrayList<>();
-    private Random rand = new Random();
+    public final EnemyGrid enemyGrid; // same enemies, bucketed by map cell
+    public final FlowField flowField; // shared path toward the player for chasing enemies
+    // When set (see useEnemyStore), enemies live here instead of in enemies/enemyGrid
+    public EnemyStore enemyStore;
+    // AI level of detail; null = every enemy moves every tick
+    public EnemyScheduler scheduler = GameConfig.AI_LOD ? new EnemyScheduler(GameConfig.AI_BUDGET) : null;
+    private final ArrayList<Enemy> hitCandidates = new ArrayList<>();
+    private int shotStamp;
+    private Random rand;
+    private LongSupplier clock; // milliseconds; the wall clock unless a simulation clock is injected
     public InputHandler input;
+    public boolean paused;      // as of the last tick's input
+    public long tickCount;      // updates so far
+
+    // Hand-off to the renderer: filled at the end of every tick (see publishSnapshot)
+    public final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+    // --- Timing ---
+    public static final int PHASE_MOVE = 0, PHASE_ENEMIES = 1, PHASE_HITSCAN = 2;
+    public final FrameTimer tickTimer = new FrameTimer("tick",
+            new String[] {"move", "enemies", "hitscan"}, GameConfig.timingCsvPath("tick"));
+
     public GameState(AuthSystem auth, String username) {
+        this(auth, username, new Random());
+    }
+
+    // auth may be null (benchmarks, headless runs): nothing is loaded or saved then.
+    // Pass a seeded Random to get the same enemy spawns every run.
+    public GameState(AuthSystem auth, String username, Random rand) {
+        this(auth, username, rand, LevelGrid.createDefault());
+    }
+
+    public GameState(AuthSystem auth, String username, Random rand, LevelGrid map) {
+        this(auth, username, rand, map, System::currentTimeMillis);
+    }
+
+    // Headless runs pass a clock that advances with the ticks, so a match plays out the same
+    // however fast it is simulated
+    public GameState(AuthSystem auth, String username, Random rand, LevelGrid map, LongSupplier clock) {
+        this.map = map;
+        this.clock = clock;
+        this.enemyGrid = new EnemyGrid(map.width, map.height);
+        this.flowField = new FlowField(map, GameConfig.FLOW_RADIUS);
+        map.visibility(); // small levels start building their PVS in the background
+        posX = map.spawnX; posY = map.spawnY;
+        prevPosX = posX; prevPosY = posY;
         this.auth = auth;
         this.currentUsername = username;
+        this.rand = rand;
         // Get high score
-        this.highScore = auth.getHighScore(username);
+        this.highScore = (auth != null) ? auth.getHighScore(username) : 0;
+        if (GameConfig.ENEMY_STORE) enemyStore = new EnemyStore(64);
         spawnEnemies();
+        publishSnapshot();
+    }
+
+    // Game time follows tickCount instead of the wall clock, so the game plays out exactly the same
+    // from the same seed and inputs (recording and replay, see InputRecording)
+    public void useTickClock() {
+        clock = () -> 1_000_000L + tickCount * 1000L / GameConfig.TICK_RATE;
+    }
+
+    // Switches to the struct-of-arrays enemy store (clears the current enemies)
+    public void useEnemyStore(int capacity) {
+        clearEnemies();
+        enemyStore = new EnemyStore(capacity);
     }
 
     public void spawnEnemies() {
-        for (int i = 0; i < 8; i++) {
+        spawnEnemies(8);
+    }
+
+    public void spawnEnemies(int count) {
+        for (int i = 0; i < count; i++) {
             double ex, ey;
             do {
-                ex = 1 + rand.nextInt(MAP_WIDTH - 2);
-                ey = 1 + rand.nextInt(MAP_HEIGHT - 2);
-            } while (worldMap[(int)ex][(int)ey] != 0 || 
+                ex = 1 + rand.nextInt(map.width - 2);
+                ey = 1 + rand.nextInt(map.height - 2);
+            } while (map.isWall((int)ex, (int)ey) || 
                      Math.sqrt((ex-posX)*(ex-posX) + (ey-posY)*(ey-posY)) < 5);
 
             
             int typeChoice = rand.nextInt(3);
-            if (typeChoice == 0) enemies.add(new SpeedEnemy(ex, ey));
-            else if (typeChoice == 1) enemies.add(new TankEnemy(ex, ey));
-            else enemies.add(new BouncerEnemy(ex, ey));
+            if (enemyStore != null) {
+                EnemyType t = (typeChoice == 0) ? EnemyType.SPEED : (typeChoice == 1 ? EnemyType.TANK : EnemyType.BOUNCER);
+                double angle = (typeChoice == 2) ? rand.nextDouble() * Math.PI * 2 : 0;
+                enemyStore.spawn(t, ex, ey, angle);
+                continue;
+            }
+            Enemy e;
+            if (typeChoice == 0) e = new SpeedEnemy(ex, ey);
+            else if (typeChoice == 1) e = new TankEnemy(ex, ey);
+            else e = new BouncerEnemy(ex, ey, rand.nextDouble() * Math.PI * 2);
+            enemies.add(e);
+            enemyGrid.add(e);
         }
     }
 
+    public void clearEnemies() {
+        enemies.clear();
+        enemyGrid.clear();
+        if (enemyStore != null) enemyStore.clear();
+    }
+
+    public int enemyCount() {
+        return (enemyStore != null) ? enemyStore.count : enemies.size();
+    }
+
     public void update(InputHandler input) {
+        savePrevious();
+        paused = input.paused;
+        tick(input);
+        tickCount++;
+        publishSnapshot();
+    }
+
+    private void tick(InputHandler input) {
         // If paused or game is over, then do not play any game updates.
         if (input.paused || isGameOver) {
         if (isGameOver && input.shooting) {
@@ -94,9 +170,10 @@ public class GameState {
         }
         return; 
     }
+        tickTimer.begin();
 
         // Handle temporary invincibility after being hit
-        if (isInvincible && System.currentTimeMillis() - invincibilityStart > 1000) {
+        if (isInvincible && clock.getAsLong() - invincibilityStart > 1000) {
             isInvincible = false;
         }
 
@@ -105,8 +182,8 @@ public class GameState {
         if (moveStep != 0) {
             double nextX = posX + dirX * moveStep;
             double nextY = posY + dirY * moveStep;
-            if (worldMap[(int)nextX][(int)posY] == 0) posX = nextX;
-            if (worldMap[(int)posX][(int)nextY] == 0) posY = nextY;
+            if (!map.isWall((int)nextX, (int)posY)) posX = nextX;
+            if (!map.isWall((int)posX, (int)nextY)) posY = nextY;
         }
 
         // --- Player Rotation ---
@@ -126,56 +203,192 @@ public class GameState {
             shootFrame++;
             if (shootFrame > 5) { shootingAction = false; shootFrame = 0; }
         }
+        tickTimer.mark(PHASE_MOVE);
 
         updateEnemies();
+        tickTimer.end();
     }
 
-    private void updateEnemies() {
+    // Copies what the renderer needs into the next free snapshot and hands it over.
+    // Runs on the simulation thread; the renderer never reads GameState fields directly.
+    public void publishSnapshot() {
+        FrameSnapshot f = snapshots.beginWrite();
+        f.map = map;
+        f.posX = posX; f.posY = posY; f.dirX = dirX; f.dirY = dirY; f.planeX = planeX; f.planeY = planeY;
+        f.prevPosX = prevPosX; f.prevPosY = prevPosY; f.prevDirX = prevDirX; f.prevDirY = prevDirY;
+        f.prevPlaneX = prevPlaneX; f.prevPlaneY = prevPlaneY;
+        f.lives = lives; f.currentScore = currentScore; f.highScore = highScore;
+        f.isInvincible = isInvincible; f.isGameOver = isGameOver;
+        f.paused = paused;
+        f.shootingAction = shootingAction; f.shootFrame = shootFrame;
+        f.rank = rank; f.rankedUsers = rankedUsers; f.topCount = topCount;
+        System.arraycopy(topNames, 0, f.topNames, 0, topCount);
+        System.arraycopy(topScores, 0, f.topScores, 0, topCount);
+
+        long now = clock.getAsLong();
+        int n = 0;
+        if (enemyStore != null) {
+            EnemyStore st = enemyStore;
+            f.ensureEnemyCapacity(st.count);
+            for (int i = 0; i < st.highWater; i++) {
+                if (!st.isAlive(i)) continue;
+                EnemyType t = st.typeOf(i);
+                f.x[n] = st.x[i]; f.y[n] = st.y[i]; f.prevX[n] = st.prevX[i]; f.prevY[n] = st.prevY[i];
+                f.size[n] = t.size;
+                f.color[n] = (now - st.lastHitTime[i] < 100) ? Color.WHITE : t.color;
+                f.id[n] = i;
+                n++;
+            }
+            f.maxId = st.highWater;
+        } else {
+            f.ensureEnemyCapacity(enemies.size());
+            for (int i = 0; i < enemies.size(); i++) {
+                Enemy e = enemies.get(i);
+                f.x[n] = e.x; f.y[n] = e.y; f.prevX[n] = e.prevX; f.prevY[n] = e.prevY;
+                f.size[n] = e.getSize();
+                f.color[n] = (now - e.lastHitTime < 100) ? Color.WHITE : e.getColor();
+                f.id[n] = i;
+                n++;
+            }
+            f.maxId = n;
+        }
+        f.enemyCount = n;
+        f.tickNanos = System.nanoTime();
+        snapshots.publish();
+    }
+
+    // Remember where everything was before this tick (also while paused, so frames stay still)
+    private void savePrevious() {
+        prevPosX = posX; prevPosY = posY;
+        prevDirX = dirX; prevDirY = dirY;
+        prevPlaneX = planeX; prevPlaneY = planeY;
         for (int i = 0; i < enemies.size(); i++) {
             Enemy e = enemies.get(i);
-            e.distToPlayer = Math.sqrt((posX - e.x) * (posX - e.x) + (posY - e.y) * (posY - e.y));
-
-            // Run the specific update logic for each subclass
-            e.update(this);
-
-            // Collision with Player
-            if (e.distToPlayer < 0.5 && !isInvincible) {
-                lives--;
-                isInvincible = true;
-                invincibilityStart = System.currentTimeMillis();
-                if (lives <= 0) {
-                    isGameOver = true;
-                }
+            e.prevX = e.x;
+            e.prevY = e.y;
+        }
+        if (enemyStore != null) enemyStore.savePrevious();
+    }
+
+    private void updateEnemies() {
+        flowField.update(posX, posY); // only does work when the player changed cell
+        boolean touching;
+        if (enemyStore != null) {
+            touching = (scheduler != null) ? scheduler.update(this, enemyStore) : enemyStore.update(this);
+        } else if (scheduler != null) {
+            scheduler.update(this, enemies);
+            touching = !isInvincible && enemyGrid.findNear(posX, posY, 0.5) != null;
+        } else {
+            for (int i = 0; i < enemies.size(); i++) {
+                Enemy e = enemies.get(i);
+                e.distToPlayer = Math.sqrt((posX - e.x) * (posX - e.x) + (posY - e.y) * (posY - e.y));
+
+                // Run the specific update logic for each subclass
+                e.update(this);
+                enemyGrid.move(e);
+            }
+            // Only enemies in the cells around the player are checked
+            touching = !isInvincible && enemyGrid.findNear(posX, posY, 0.5) != null;
+        }
+
+        // Collision with Player
+        if (touching && !isInvincible) {
+            lives--;
+            isInvincible = true;
+            invincibilityStart = clock.getAsLong();
+            if (lives <= 0) {
+                isGameOver = true;
+                readLeaderboard();
             }
         }
+        tickTimer.mark(PHASE_ENEMIES);
 
         // --- Hitscan Shooting Logic ---
-        if (shootingAction && shootFrame == 1) {
-            for (Enemy e : enemies) {
-                double dx = e.x - posX;
-                double dy = e.y - posY;
-                double dot = dx * dirX + dy * dirY;
-                
-                if (dot > 0) { // Check if enemy is in front
-                    double perpDist = Math.abs(dx * dirY - dy * dirX);
-                    if (perpDist < e.getSize() * 0.5) {
-                        e.hp -= 10;
-                        e.lastHitTime = System.currentTimeMillis();
-                        
-                        if (e.hp <= 0) {
-                            currentScore += e.getPoints();
-                            // Update and persist High Score if broken
-                            if (currentScore > highScore) {
-                                highScore = currentScore;
-                                auth.updateHighScore(currentUsername, highScore);
-                            }
-                        }
+        if (shootingAction && shootFrame == 1 && enemyStore != null) {
+            addScore(enemyStore.hitscan(this, 10, clock.getAsLong()));
+            if (enemyStore.count == 0 && !isGameOver) spawnEnemies();
+        } else if (shootingAction && shootFrame == 1) {
+            hitscan();
+
+            // Clear dead enemies and spawn new wave if empty
+            int kept = 0;
+            for (int i = 0; i < enemies.size(); i++) {
+                Enemy e = enemies.get(i);
+                if (e.hp <= 0) enemyGrid.remove(e);
+                else enemies.set(kept++, e);
+            }
+            while (enemies.size() > kept) enemies.remove(enemies.size() - 1);
+            if (enemies.isEmpty() && !isGameOver) spawnEnemies();
+        }
+        tickTimer.mark(PHASE_HITSCAN);
+    }
+
+    // Walks the shot through the map cell by cell (DDA) until the first wall. Only enemies bucketed
+    // within one cell of the path are tested (no enemy is wider than two cells), and only the ones
+    // in front of the wall are hit. Like before, one shot goes through every enemy in the line.
+    private void hitscan() {
+        int stamp = ++shotStamp;
+        hitCandidates.clear();
+        int mapX = (int) posX, mapY = (int) posY;
+        double deltaDistX = Math.abs(1 / dirX), deltaDistY = Math.abs(1 / dirY);
+        int stepX = (dirX < 0) ? -1 : 1, stepY = (dirY < 0) ? -1 : 1;
+        double sideDistX = ((dirX < 0) ? posX - mapX : mapX + 1.0 - posX) * deltaDistX;
+        double sideDistY = ((dirY < 0) ? posY - mapY : mapY + 1.0 - posY) * deltaDistY;
+        double wallDist;
+        while (true) {
+            collectHitCandidates(mapX, mapY, stamp);
+            if (sideDistX < sideDistY) { wallDist = sideDistX; sideDistX += deltaDistX; mapX += stepX; }
+            else { wallDist = sideDistY; sideDistY += deltaDistY; mapY += stepY; }
+            if (map.isWall(mapX, mapY)) break;
+        }
+
+        for (int i = 0; i < hitCandidates.size(); i++) {
+            Enemy e = hitCandidates.get(i);
+            double dot = (e.x - posX) * dirX + (e.y - posY) * dirY;
+            if (dot >= wallDist) continue; // behind the wall
+            e.hp -= 10;
+            e.lastHitTime = clock.getAsLong();
+
+            if (e.hp <= 0) addScore(e.getPoints());
+        }
+    }
+
+    private void addScore(int points) {
+        if (points == 0) return;
+        currentScore += points;
+        // Update and persist High Score if broken
+        if (currentScore > highScore) {
+            highScore = currentScore;
+            if (auth != null) auth.updateHighScore(currentUsername, highScore);
+        }
+    }
+
+    private void readLeaderboard() {
+        if (auth == null) return;
+        rank = auth.getRank(currentUsername);
+        rankedUsers = auth.getUserCount();
+        topCount = auth.getLeaderboard(1, topNames, topScores);
+    }
+
+    // Adds enemies near map cell (cx, cy) that the shot line passes through
+    private void collectHitCandidates(int cx, int cy, int stamp) {
+        EnemyGrid grid = enemyGrid;
+        int bx0 = Math.max(0, cx - 1) >> grid.shift, bx1 = Math.min(map.width - 1, cx + 1) >> grid.shift;
+        int by0 = Math.max(0, cy - 1) >> grid.shift, by1 = Math.min(map.height - 1, cy + 1) >> grid.shift;
+        for (int bx = bx0; bx <= bx1; bx++) {
+            for (int by = by0; by <= by1; by++) {
+                for (Enemy e = grid.first(bx * grid.bucketsY + by); e != null; e = e.gridNext) {
+                    if (e.shotStamp == stamp) continue; // already tested for this shot
+                    e.shotStamp = stamp;
+                    double dx = e.x - posX;
+                    double dy = e.y - posY;
+                    double dot = dx * dirX + dy * dirY;
+                    if (dot > 0) { // Check if enemy is in front
+                        double perpDist = Math.abs(dx * dirY - dy * dirX);
+                        if (perpDist < e.getSize() * 0.5) hitCandidates.add(e);
                     }
                 }
             }
-            // Clear dead enemies and spawn new wave if empty
-            enemies.removeIf(e -> e.hp <= 0);
-            if (enemies.isEmpty() && !isGameOver) spawnEnemies();
         }
     }
 
@@ -184,11 +397,12 @@ public class GameState {
         currentScore = 0;
         isGameOver = false;
         isInvincible = false;
-        enemies.clear();
+        clearEnemies();
         spawnEnemies();
         // Reset player to starting position
-        posX = 22; posY = 12;
+        posX = map.spawnX; posY = map.spawnY;
         dirX = -1; dirY = 0;
         planeX = 0; planeY = 0.66;
+        savePrevious(); // Snap instead of sliding back to the start
     }
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Retained overlay layers for the Renderer: parts of the HUD that rarely change are drawn once
+// into images and only blitted each frame.
+//
+//  - Minimap background and walls: one image of a region of the map (the whole map when it is
+//    small), rebuilt when the map changes or the scrolling window moves out of the region.
+//  - Stats (lives, score, high score) and the pause button: rebuilt when a value shown changes.
+//  - Pause / game over screen: rebuilt when the state or the window size changes.
+// The minimap border and markers (player, enemies) are the only things drawn from scratch every
+// frame, all with opaque fillRect/drawRect/drawLine: Java2D allocates for translucent fills and
+// ovals, but not for those or for blitting whole images.
+//
+// The images come from the target's GraphicsConfiguration, so Java2D can keep them in video
+// memory as long as they are not redrawn.
+class HudLayers {
+    static final int MINIMAP_CELLS = 24;      // window shown on big levels
+    private static final int REGION_CELLS = 4 * MINIMAP_CELLS; // cached around it
+    private static final int BLOCK = 6;
+    private static final int PADDING = 20;
+
+    private static final Font BUTTON_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final Font PAUSED_FONT = new Font("Arial", Font.BOLD, 50);
+    private static final Font STATS_FONT = new Font("Monospaced", Font.BOLD, 20);
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 60);
+    private static final Font SCORE_FONT = new Font("Arial", Font.BOLD, 25);
+    private static final Font RETRY_FONT = new Font("Arial", Font.ITALIC, 18);
+    private static final Font TABLE_FONT = new Font("Monospaced", Font.BOLD, 18);
+    private static final Color BOX = new Color(0, 0, 0, 180);
+    private static final Color BUTTON = new Color(50, 50, 50, 200);
+    private static final Color PAUSE_DIM = new Color(0, 0, 0, 120);
+    private static final Color GAME_OVER_DIM = new Color(0, 0, 0, 180);
+    private static final BasicStroke THIN = new BasicStroke(1), THICK = new BasicStroke(2);
+
+    // --- Minimap walls ---
+    private BufferedImage walls;
+    private LevelGrid wallsMap;
+    private int wallsVersion;
+    private int regionR, regionC, regionRows, regionCols; // cells covered by walls
+
+    // --- Stats and pause button ---
+    private BufferedImage stats, button;
+    private int shownLives = -1, shownScore = -1, shownHigh = -1;
+    private boolean shownInvincible, shownPaused;
+
+    // --- Pause / game over screen ---
+    private BufferedImage screen;
+    private int screenKind; // 0 = none, 1 = paused, 2 = game over
+    private int screenScore, screenHigh, screenRank, screenRanked, screenTop;
+
+    // --- Minimap ---
+
+    void drawMinimap(Graphics2D g2, FrameSnapshot snap, double camX, double camY, double dirX, double dirY,
+                     int w, int h) {
+        // Big levels only show a MINIMAP_CELLS window around the player
+        LevelGrid map = snap.map;
+        int rows = Math.min(map.width, MINIMAP_CELLS);  // rows    = posX axis
+        int cols = Math.min(map.height, MINIMAP_CELLS); // columns = posY axis
+        int originR = Math.max(0, Math.min(map.width - rows, (int) camX - rows / 2));
+        int originC = Math.max(0, Math.min(map.height - cols, (int) camY - cols / 2));
+        int mapPixelWidth = cols * BLOCK;
+        int mapPixelHeight = rows * BLOCK;
+
+        // Top left of minimap (shifted so the window origin lands on it)
+        int boxX = w - mapPixelWidth - PADDING;
+        int boxY = h - mapPixelHeight - PADDING;
+        int startX = boxX - originC * BLOCK;
+        int startY = boxY - originR * BLOCK;
+
+        // Background and walls: the window's part of the cached region
+        if (walls == null || wallsMap != map || wallsVersion != map.getVersion()
+                || originR < regionR || originR + rows > regionR + regionRows
+                || originC < regionC || originC + cols > regionC + regionCols) {
+            buildWalls(g2, map, originR, originC, rows, cols);
+        }
+        int sx = (originC - regionC) * BLOCK, sy = (originR - regionR) * BLOCK;
+        g2.drawImage(walls, boxX, boxY, boxX + mapPixelWidth, boxY + mapPixelHeight,
+                sx, sy, sx + mapPixelWidth, sy + mapPixelHeight, null);
+
+        // Border: the right and bottom edges are outside the image; on the top and left edges
+        // walls are drawn over the border
+        g2.setColor(Color.WHITE);
+        g2.setStroke(THIN);
+        g2.drawLine(boxX + mapPixelWidth, boxY, boxX + mapPixelWidth, boxY + mapPixelHeight);
+        g2.drawLine(boxX, boxY + mapPixelHeight, boxX + mapPixelWidth, boxY + mapPixelHeight);
+        for (int c = 0; c < cols; c++) {
+            if (!map.isWall(originR, originC + c)) g2.fillRect(boxX + c * BLOCK, boxY, BLOCK, 1);
+        }
+        for (int r = 0; r < rows; r++) {
+            if (!map.isWall(originR + r, originC)) g2.fillRect(boxX, boxY + r * BLOCK, 1, BLOCK);
+        }
+
+        // Enemies
+        g2.setColor(Color.RED);
+        for (int i = 0; i < snap.enemyCount; i++) {
+            double ex = snap.x[i], ey = snap.y[i];
+            if (ex < originR || ex >= originR + rows || ey < originC || ey >= originC + cols) continue;
+            int eX = startX + (int) (ey * BLOCK);
+            int eY = startY + (int) (ex * BLOCK);
+            g2.fillRect(eX, eY, 2, 2); // what fillOval(eX - 1, eY - 1, 3, 3) fills, without its Path2D
+        }
+
+        // Player and view direction
+        g2.setColor(Color.GREEN);
+        int pX = startX + (int) (camY * BLOCK); // Player Y maps to Screen X
+        int pY = startY + (int) (camX * BLOCK); // Player X maps to Screen Y
+        g2.fillRect(pX - 1, pY - 1, 4, 4); // fillOval(pX - 2, pY - 2, 5, 5)
+        int lineLength = 8;
+        g2.drawLine(pX, pY, (int) (pX + dirY * lineLength), (int) (pY + dirX * lineLength));
+    }
+
+    // Caches a REGION_CELLS region centred on the window (or the whole map if it is smaller)
+    private void buildWalls(Graphics2D target, LevelGrid map, int originR, int originC, int rows, int cols) {
+        regionRows = Math.min(map.width, Math.max(rows, REGION_CELLS));
+        regionCols = Math.min(map.height, Math.max(cols, REGION_CELLS));
+        regionR = Math.max(0, Math.min(map.width - regionRows, originR - (regionRows - rows) / 2));
+        regionC = Math.max(0, Math.min(map.height - regionCols, originC - (regionCols - cols) / 2));
+        int iw = regionCols * BLOCK, ih = regionRows * BLOCK;
+        if (walls == null || walls.getWidth() != iw || walls.getHeight() != ih) {
+            walls = target.getDeviceConfiguration().createCompatibleImage(iw, ih, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = walls.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.setColor(BOX);
+        g.fillRect(0, 0, iw, ih);
+        g.setColor(Color.GRAY);
+        for (int r = 0; r < regionRows; r++) {
+            for (int c = 0; c < regionCols; c++) {
+                if (map.isWall(regionR + r, regionC + c)) g.fillRect(c * BLOCK, r * BLOCK, BLOCK, BLOCK);
+            }
+        }
+        g.dispose();
+        wallsMap = map;
+        wallsVersion = map.getVersion();
+    }
+
+    // --- Stats and pause button ---
+
+    void drawButton(Graphics2D g2, FrameSnapshot snap, int w) {
+        if (button == null || snap.paused != shownPaused) {
+            buildButton(g2, snap.paused);
+        }
+        g2.drawImage(button, w - 81, 9, null);
+    }
+
+    void drawStats(Graphics2D g2, FrameSnapshot snap) {
+        if (stats == null || snap.lives != shownLives || snap.currentScore != shownScore
+                || snap.highScore != shownHigh || snap.isInvincible != shownInvincible) {
+            buildStats(g2, snap);
+        }
+        g2.drawImage(stats, 0, 0, null);
+    }
+
+    // 70 x 40 button at (w - 80, 10), plus the outer half of its 2px border
+    private void buildButton(Graphics2D target, boolean paused) {
+        button = target.getDeviceConfiguration().createCompatibleImage(72, 42, Transparency.TRANSLUCENT);
+        Graphics2D g = button.createGraphics();
+        g.translate(1, 1);
+        g.setColor(BUTTON);
+        g.fillRoundRect(0, 0, 70, 40, 10, 10);
+        g.setColor(Color.WHITE);
+        g.setStroke(THICK);
+        g.drawRoundRect(0, 0, 70, 40, 10, 10);
+        g.setFont(BUTTON_FONT);
+        g.drawString(paused ? "RESUME" : "PAUSE", 7, 25);
+        g.dispose();
+        shownPaused = paused;
+    }
+
+    private void buildStats(Graphics2D target, FrameSnapshot snap) {
+        String lives = "LIVES:    " + snap.lives;
+        String score = "SCORE:    " + snap.currentScore;
+        String high = "HI-SCORE: " + snap.highScore;
+        FontMetrics fm = target.getFontMetrics(STATS_FONT);
+        int iw = 20 + Math.max(fm.stringWidth(lives), Math.max(fm.stringWidth(score), fm.stringWidth(high))) + 4;
+        int ih = 100 + fm.getMaxDescent() + 1;
+        if (stats == null || stats.getWidth() < iw || stats.getHeight() < ih) {
+            stats = target.getDeviceConfiguration().createCompatibleImage(iw, ih, Transparency.BITMASK);
+        }
+        Graphics2D g = stats.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, stats.getWidth(), stats.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setFont(STATS_FONT);
+        g.setColor(snap.isInvincible ? Color.YELLOW : Color.RED);
+        g.drawString(lives, 20, 40);
+        g.setColor(Color.CYAN);
+        g.drawString(score, 20, 70);
+        g.setColor(Color.YELLOW);
+        g.drawString(high, 20, 100);
+        g.dispose();
+        shownLives = snap.lives;
+        shownScore = snap.currentScore;
+        shownHigh = snap.highScore;
+        shownInvincible = snap.isInvincible;
+    }
+
+    // --- Pause / game over screen ---
+
+    // Draws nothing while playing. The leaderboard only changes with the rank, so the game over
+    // screen is keyed on the numbers it shows rather than the names
+    void drawScreen(Graphics2D g2, FrameSnapshot snap, int w, int h) {
+        int kind = snap.isGameOver ? 2 : (snap.paused ? 1 : 0);
+        if (kind == 0) return;
+        if (screen == null || screen.getWidth() != w || screen.getHeight() != h || kind != screenKind
+                || (kind == 2 && (snap.currentScore != screenScore || snap.highScore != screenHigh
+                        || snap.rank != screenRank || snap.rankedUsers != screenRanked
+                        || snap.topCount != screenTop))) {
+            buildScreen(g2, snap, kind, w, h);
+        }
+        g2.drawImage(screen, 0, 0, null);
+    }
+
+    private void buildScreen(Graphics2D target, FrameSnapshot snap, int kind, int w, int h) {
+        if (screen == null || screen.getWidth() != w || screen.getHeight() != h) {
+            screen = target.getDeviceConfiguration().createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = screen.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, w, h);
+        g.setComposite(AlphaComposite.SrcOver);
+        if (kind == 1) {
+            g.setColor(PAUSE_DIM);
+            g.fillRect(0, 0, w, h);
+            g.setColor(Color.YELLOW);
+            g.setFont(PAUSED_FONT);
+            g.drawString("GAME PAUSED", w/2 - 170, h/2);
+        } else {
+            drawGameOver(g, snap, w, h);
+        }
+        g.dispose();
+        screenKind = kind;
+        screenScore = snap.currentScore;
+        screenHigh = snap.highScore;
+        screenRank = snap.rank;
+        screenRanked = snap.rankedUsers;
+        screenTop = snap.topCount;
+    }
+
+    private void drawGameOver(Graphics2D g2, FrameSnapshot snap, int w, int h) {
+        // Dim the background
+        g2.setColor(GAME_OVER_DIM);
+        g2.fillRect(0, 0, w, h);
+
+        // Draw game over text
+        g2.setColor(Color.RED);
+        g2.setFont(TITLE_FONT);
+        String mainText = "GAME OVER";
+        int mainWidth = g2.getFontMetrics().stringWidth(mainText);
+        // Everything moves up to make room for the leaderboard
+        int top = (snap.topCount > 0) ? h / 2 - 190 : h / 2 - 50;
+        g2.drawString(mainText, w / 2 - mainWidth / 2, top);
+
+        // Show final score
+        g2.setColor(Color.WHITE);
+        g2.setFont(SCORE_FONT);
+        String scoreText = "FINAL SCORE: " + snap.currentScore;
+        int scoreWidth = g2.getFontMetrics().stringWidth(scoreText);
+        g2.drawString(scoreText, w / 2 - scoreWidth / 2, top + 60);
+
+        // Show high score
+        g2.setColor(Color.YELLOW);
+        g2.drawString("PERSONAL BEST: " + snap.highScore, w / 2 - scoreWidth / 2, top + 95);
+
+        int retryY = h / 2 + 100;
+        if (snap.topCount > 0) {
+            g2.drawString("RANK: #" + snap.rank + " of " + snap.rankedUsers, w / 2 - scoreWidth / 2, top + 130);
+            drawTopTen(g2, snap, w / 2 - 130, top + 170);
+            retryY = top + 195 + 22 * snap.topCount;
+        }
+
+        // Restart text
+        g2.setColor(Color.LIGHT_GRAY);
+        g2.setFont(RETRY_FONT);
+        String retryText = "Press SPACE to Restart";
+        int retryWidth = g2.getFontMetrics().stringWidth(retryText);
+        g2.drawString(retryText, w / 2 - retryWidth / 2, retryY);
+    }
+
+    // Top ten table on the game over screen; the player's own row is highlighted
+    private void drawTopTen(Graphics2D g2, FrameSnapshot snap, int x, int y) {
+        g2.setFont(TABLE_FONT);
+        g2.setColor(Color.CYAN);
+        g2.drawString("TOP " + GameState.TOP_COUNT, x, y);
+        for (int i = 0; i < snap.topCount; i++) {
+            int rowY = y + 22 * (i + 1);
+            g2.setColor((i + 1 == snap.rank) ? Color.YELLOW : Color.WHITE);
+            g2.drawString(String.format("%2d. %-14.14s %7d", i + 1, snap.topNames[i], snap.topScores[i]), x, rowY);
+        }
+    }
+}
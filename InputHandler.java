@@ -3,6 +3,7 @@ import java.awt.event.*;
 public class InputHandler implements KeyListener, MouseListener {
     public boolean up, down, rotateLeft, rotateRight, shooting;
     public boolean paused = false; // The Master Switch
+    public boolean showTimings = false; // F3: frame/tick timing overlay
 
     @Override
     public void mousePressed(MouseEvent e) {
@@ -31,6 +32,7 @@ public class InputHandler implements KeyListener, MouseListener {
         if (code == KeyEvent.VK_SPACE) shooting = true;
         // Also allow 'P' to pause
         if (code == KeyEvent.VK_P) paused = !paused;
+        if (code == KeyEvent.VK_F3) showTimings = !showTimings;
     }
 
     @Override
@@ -0,0 +1,39 @@
+// Feeds a recorded session back into the game tick by tick. After the last recorded tick all
+// keys stay released and the final state is printed once.
+public class InputPlayback implements InputSource {
+    private final InputRecording recording;
+    private int tick;
+    private boolean reported;
+
+    public InputPlayback(InputRecording recording) {
+        this.recording = recording;
+    }
+
+    public boolean finished() {
+        return tick >= recording.length();
+    }
+
+    @Override
+    public void next(GameState state, InputHandler input) {
+        if (tick < recording.length()) {
+            recording.apply(tick++, input);
+            return;
+        }
+        if (!reported) {
+            System.out.println("Replay finished: " + describe(state));
+            reported = true;
+        }
+        input.up = input.down = input.rotateLeft = input.rotateRight = input.shooting = input.paused = false;
+    }
+
+    // Short summary of a game, equal for two runs that played out the same
+    public static String describe(GameState state) {
+        long hash = Double.doubleToLongBits(state.posX) * 31 + Double.doubleToLongBits(state.posY);
+        hash = hash * 31 + Double.doubleToLongBits(state.dirX);
+        hash = hash * 31 + state.currentScore;
+        hash = hash * 31 + state.lives;
+        hash = hash * 31 + state.enemyCount();
+        return String.format("tick %d, score %d, lives %d, enemies %d, state %016x",
+                state.tickCount, state.currentScore, state.lives, state.enemyCount(), hash);
+    }
+}
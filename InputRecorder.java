@@ -0,0 +1,22 @@
+// Passes the keyboard state through to the game once per tick and records it (see InputRecording)
+public class InputRecorder implements InputSource {
+    private final InputHandler keyboard;
+    private final InputRecording recording;
+
+    public InputRecorder(InputHandler keyboard, InputRecording recording) {
+        this.keyboard = keyboard;
+        this.recording = recording;
+    }
+
+    @Override
+    public void next(GameState state, InputHandler input) {
+        // One read per key, so the tick and the recording see the same states
+        input.up = keyboard.up;
+        input.down = keyboard.down;
+        input.rotateLeft = keyboard.rotateLeft;
+        input.rotateRight = keyboard.rotateRight;
+        input.shooting = keyboard.shooting;
+        input.paused = keyboard.paused;
+        recording.append(input);
+    }
+}
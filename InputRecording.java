@@ -0,0 +1,137 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+// A played session as the per-tick key states plus everything else the game needs to play out
+// exactly the same again: the Random seed used for spawns, the tick rate, the enemy storage mode,
+// the AI level-of-detail budget and a checksum of the level. Game time must follow the ticks (GameState.useTickClock).
+//
+// Each tick is 6 bits (up, down, rotateLeft, rotateRight, shooting, paused); ten ticks are
+// packed into each long, so an hour at 60 ticks/s is about 170 KB.
+//
+// File format (big-endian):
+//   "RCIN"  magic
+//   int     version (2)
+//   long    seed
+//   int     tick rate
+//   int     flags (1 = enemy store)
+//   int     AI budget (GameConfig.AI_BUDGET, -1 = AI level of detail off; not in version 1 files)
+//   int     level checksum (LevelGrid.checksum)
+//   int     tick count
+//   long[]  (tick count + 9) / 10 words
+public class InputRecording {
+    private static final int MAGIC = 0x5243494E; // "RCIN"
+    private static final int VERSION = 2;
+    private static final int BITS = 6, TICKS_PER_WORD = 10;
+    private static final int FLAG_ENEMY_STORE = 1;
+
+    public final long seed;
+    public final int tickRate;
+    public final boolean enemyStore;
+    public final int aiBudget;
+    public final int levelChecksum;
+    private long[] words = new long[256];
+    private int ticks;
+
+    public InputRecording(long seed, int tickRate, boolean enemyStore, int aiBudget, int levelChecksum) {
+        this.seed = seed;
+        this.tickRate = tickRate;
+        this.enemyStore = enemyStore;
+        this.aiBudget = aiBudget;
+        this.levelChecksum = levelChecksum;
+    }
+
+    // A new recording for a game started now with this seed on this map
+    public static InputRecording start(long seed, LevelGrid map) {
+        return new InputRecording(seed, GameConfig.TICK_RATE, GameConfig.ENEMY_STORE, currentAiBudget(), map.checksum());
+    }
+
+    private static int currentAiBudget() {
+        return GameConfig.AI_LOD ? GameConfig.AI_BUDGET : -1;
+    }
+
+    public int length() {
+        return ticks;
+    }
+
+    public synchronized void append(InputHandler in) {
+        int word = ticks / TICKS_PER_WORD;
+        if (word == words.length) words = Arrays.copyOf(words, words.length * 2);
+        long bits = (in.up ? 1 : 0) | (in.down ? 2 : 0) | (in.rotateLeft ? 4 : 0)
+                | (in.rotateRight ? 8 : 0) | (in.shooting ? 16 : 0) | (in.paused ? 32 : 0);
+        words[word] |= bits << ((ticks % TICKS_PER_WORD) * BITS);
+        ticks++;
+    }
+
+    // Sets the key states of the given tick
+    public void apply(int tick, InputHandler in) {
+        int bits = (int) (words[tick / TICKS_PER_WORD] >>> ((tick % TICKS_PER_WORD) * BITS));
+        in.up = (bits & 1) != 0;
+        in.down = (bits & 2) != 0;
+        in.rotateLeft = (bits & 4) != 0;
+        in.rotateRight = (bits & 8) != 0;
+        in.shooting = (bits & 16) != 0;
+        in.paused = (bits & 32) != 0;
+    }
+
+    // Why this recording cannot be replayed exactly with the current settings, or null if it can
+    public String checkCompatible(LevelGrid map) {
+        if (tickRate != GameConfig.TICK_RATE) return "recorded with -Draycaster.tickRate=" + tickRate;
+        if (enemyStore != GameConfig.ENEMY_STORE) return "recorded with -Draycaster.enemyStore=" + enemyStore;
+        if (aiBudget != currentAiBudget()) {
+            return (aiBudget < 0) ? "recorded with -Draycaster.aiLod=false" : "recorded with -Draycaster.aiBudget=" + aiBudget;
+        }
+        if (levelChecksum != map.checksum()) return "recorded on a different level (see -Draycaster.level)";
+        return null;
+    }
+
+    // A fresh game set up the way the recorded one started (no AuthSystem, nothing is saved)
+    public GameState newGame(LevelGrid map) {
+        GameState state = new GameState(null, "replay", new Random(seed), map);
+        state.useTickClock();
+        return state;
+    }
+
+    // --- Files ---
+
+    public synchronized void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(seed);
+            out.writeInt(tickRate);
+            out.writeInt(enemyStore ? FLAG_ENEMY_STORE : 0);
+            out.writeInt(aiBudget);
+            out.writeInt(levelChecksum);
+            out.writeInt(ticks);
+            for (int i = 0, n = (ticks + TICKS_PER_WORD - 1) / TICKS_PER_WORD; i < n; i++) out.writeLong(words[i]);
+        }
+    }
+
+    public static InputRecording load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an input recording: " + path);
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported recording version " + version + ": " + path);
+            long seed = in.readLong();
+            int tickRate = in.readInt();
+            int flags = in.readInt();
+            int aiBudget = (version >= 2) ? in.readInt() : -1; // level of detail came later
+            int checksum = in.readInt();
+            InputRecording rec = new InputRecording(seed, tickRate, (flags & FLAG_ENEMY_STORE) != 0, aiBudget, checksum);
+            int ticks = in.readInt();
+            if (ticks < 0) throw new IOException("Bad tick count " + ticks + ": " + path);
+            int n = (ticks + TICKS_PER_WORD - 1) / TICKS_PER_WORD;
+            rec.words = new long[Math.max(1, n)];
+            for (int i = 0; i < n; i++) rec.words[i] = in.readLong(); // EOFException if truncated
+            rec.ticks = ticks;
+            return rec;
+        }
+    }
+}
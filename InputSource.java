@@ -0,0 +1,5 @@
+// Something other than the keyboard that drives an InputHandler: sets its key states right
+// before each GameState.update, e.g. a bot or a recorded session.
+public interface InputSource {
+    void next(GameState state, InputHandler input);
+}
@@ -0,0 +1,229 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Ranked index of every user's high score, kept in sync by AuthSystem.
+//
+// An order-statistic treap: a binary search tree ordered by (score descending, name ascending),
+// balanced by random node priorities, where every node also stores its subtree size. That gives
+// O(log n) score updates, the rank of any user and the user at any rank, so top-N and
+// "around me" pages cost O(page * log n) instead of sorting every user.
+// Like EnemyStore, nodes are slots in parallel arrays rather than objects, so millions of
+// users are a handful of flat arrays. Not thread-safe; AuthSystem locks around it.
+public class Leaderboard {
+    private static final int NIL = 0; // slot 0 is the empty tree, with size 0
+
+    private String[] name;
+    private int[] score, left, right, size, priority;
+    private int root = NIL;
+    private int count;
+    private final Random rand = new Random(1);
+
+    // Results of split(); only valid right after the call
+    private int splitLow, splitHigh;
+
+    public Leaderboard(int capacity) {
+        capacity = Math.max(16, capacity + 1);
+        name = new String[capacity];
+        score = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        size = new int[capacity];
+        priority = new int[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Adds a user and returns its node, which the caller keeps for update() and rank()
+    public int add(String user, int userScore) {
+        if (count + 1 == name.length) grow();
+        int node = ++count;
+        name[node] = user;
+        score[node] = userScore;
+        left[node] = right[node] = NIL;
+        size[node] = 1;
+        priority[node] = rand.nextInt();
+        insert(node);
+        return node;
+    }
+
+    // Fills an empty leaderboard in one go; users[i] gets node i + 1. Sorts once and builds the
+    // treap bottom-up in O(n) instead of n separate inserts, for loading big user databases.
+    public void addAll(String[] users, int[] userScores, int n) {
+        if (count != 0) throw new IllegalStateException("Leaderboard is not empty");
+        while (n + 1 > name.length) grow();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            int node = i + 1;
+            name[node] = users[i];
+            score[node] = userScores[i];
+            priority[node] = rand.nextInt();
+            order[i] = node;
+        }
+        count = n;
+        Arrays.sort(order, (a, b) -> (score[a] != score[b]) ? Integer.compare(score[b], score[a]) : name[a].compareTo(name[b]));
+
+        // Cartesian tree over the sorted nodes: the right spine is kept on a stack, and each new
+        // (largest so far) node takes over the part of the spine with lower priority as its left child
+        int[] spine = new int[n + 1];
+        int depth = 0;
+        for (int i = 0; i < n; i++) {
+            int node = order[i];
+            int last = NIL;
+            while (depth > 0 && priority[spine[depth - 1]] < priority[node]) last = spine[--depth];
+            left[node] = last;
+            right[node] = NIL;
+            if (depth > 0) right[spine[depth - 1]] = node;
+            spine[depth++] = node;
+        }
+        root = (depth > 0) ? spine[0] : NIL;
+        pullAll(root, spine);
+    }
+
+    // Sets every subtree size with an iterative post-order walk; stack must hold count nodes
+    private void pullAll(int t, int[] stack) {
+        if (t == NIL) return;
+        int top = 0;
+        stack[top++] = t;
+        size[NIL] = 0;
+        for (int i = 1; i <= count; i++) size[i] = -1;
+        while (top > 0) {
+            int node = stack[top - 1];
+            int l = left[node], r = right[node];
+            if (l != NIL && size[l] < 0) { stack[top++] = l; continue; }
+            if (r != NIL && size[r] < 0) { stack[top++] = r; continue; }
+            pull(node);
+            top--;
+        }
+    }
+
+    public void update(int node, int newScore) {
+        if (score[node] == newScore) return;
+        root = remove(root, node); // must happen while the node still has its old key
+        score[node] = newScore;
+        left[node] = right[node] = NIL;
+        size[node] = 1;
+        insert(node);
+    }
+
+    // 1 = best
+    public int rank(int node) {
+        int r = 0;
+        int t = root;
+        while (t != node) {
+            if (before(node, t)) {
+                t = left[t];
+            } else {
+                r += size[left[t]] + 1;
+                t = right[t];
+            }
+        }
+        return r + size[left[node]] + 1;
+    }
+
+    // Node at the given rank (1-based), NIL if out of range
+    public int at(int rank) {
+        if (rank < 1 || rank > count) return NIL;
+        int t = root;
+        while (true) {
+            int l = size[left[t]];
+            if (rank <= l) {
+                t = left[t];
+            } else if (rank == l + 1) {
+                return t;
+            } else {
+                rank -= l + 1;
+                t = right[t];
+            }
+        }
+    }
+
+    public String nameOf(int node) { return name[node]; }
+    public int scoreOf(int node) { return score[node]; }
+
+    // Fills names/scores with up to names.length entries starting at firstRank; returns how many
+    public int page(int firstRank, String[] names, int[] scores) {
+        int n = 0;
+        for (int r = Math.max(1, firstRank); n < names.length && r <= count; r++, n++) {
+            int node = at(r);
+            names[n] = name[node];
+            scores[n] = score[node];
+        }
+        return n;
+    }
+
+    // First rank of the page of the given length that has the node near its middle
+    public int pageAround(int node, int length) {
+        int first = rank(node) - length / 2;
+        return Math.max(1, Math.min(first, count - length + 1));
+    }
+
+    // --- Treap ---
+
+    // True if node a ranks above node b
+    private boolean before(int a, int b) {
+        if (score[a] != score[b]) return score[a] > score[b];
+        return name[a].compareTo(name[b]) < 0;
+    }
+
+    private void pull(int t) {
+        size[t] = size[left[t]] + size[right[t]] + 1;
+    }
+
+    private void insert(int node) {
+        split(root, node);
+        int high = splitHigh;
+        root = merge(merge(splitLow, node), high);
+    }
+
+    // Splits tree t into the nodes ranking before key (splitLow) and the rest (splitHigh)
+    private void split(int t, int key) {
+        if (t == NIL) {
+            splitLow = splitHigh = NIL;
+            return;
+        }
+        if (before(t, key)) {
+            split(right[t], key);
+            right[t] = splitLow;
+            splitLow = t;
+        } else {
+            split(left[t], key);
+            left[t] = splitHigh;
+            splitHigh = t;
+        }
+        pull(t);
+    }
+
+    // Every node of a ranks before every node of b
+    private int merge(int a, int b) {
+        if (a == NIL) return b;
+        if (b == NIL) return a;
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            pull(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        pull(b);
+        return b;
+    }
+
+    private int remove(int t, int node) {
+        if (t == node) return merge(left[t], right[t]);
+        if (before(node, t)) left[t] = remove(left[t], node);
+        else right[t] = remove(right[t], node);
+        pull(t);
+        return t;
+    }
+
+    private void grow() {
+        int n = name.length * 2;
+        name = Arrays.copyOf(name, n);
+        score = Arrays.copyOf(score, n);
+        left = Arrays.copyOf(left, n);
+        right = Arrays.copyOf(right, n);
+        size = Arrays.copyOf(size, n);
+        priority = Arrays.copyOf(priority, n);
+    }
+}
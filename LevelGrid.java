@@ -0,0 +1,289 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+// The level map as one flat array of bytes: cell (x, y) is at x * height + y,
+// the same order as the old worldMap[x][y]. 0 = empty, anything else = wall.
+//
+// Small levels are read into a byte[]. Levels of MMAP_CELLS cells or more are memory-mapped
+// straight from the file instead, so opening them costs no parsing and no copying.
+//
+// File format (big-endian):
+//   "RCLV"  magic
+//   int     version (1)
+//   int     width, height
+//   float   spawnX, spawnY
+//   byte[]  width * height cells
+public class LevelGrid {
+    private static final int MAGIC = 0x52434C56; // "RCLV"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 4 + 4;
+    public static final long MMAP_CELLS = 4096L * 4096L;
+
+    // The original hand-made map; cell values above 1 only pick a different wall texture
+    private static final int[][] DEFAULT_MAP = {
+        {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,2,2,2,2,2,0,0,0,0,0,0,3,0,0,0,0,0,0,0,1},
+        {1,0,0,0,2,0,0,0,2,0,0,0,0,0,0,3,0,0,0,0,0,0,0,1},
+        {1,0,0,0,2,0,0,0,2,0,0,0,0,0,0,3,3,3,3,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,1,0,0,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,4,0,4,0,4,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,4,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,4,0,4,0,4,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,2,2,2,2,2,2,2,2,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,3,3,0,0,3,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,3,3,0,0,3,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,0,1},
+        {1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1,1}
+    };
+
+    public final int width, height; // width = size along x (first index), height = along y
+    public final double spawnX, spawnY;
+    private final byte[] cells;      // null when memory-mapped
+    private final ByteBuffer mapped; // null when on the heap
+    private int version;             // bumped by set(), lets caches notice map changes
+    private volatile Visibility visibility; // of the current version, made on first use
+
+    private LevelGrid(int width, int height, double spawnX, double spawnY, byte[] cells, ByteBuffer mapped) {
+        this.width = width;
+        this.height = height;
+        this.spawnX = spawnX;
+        this.spawnY = spawnY;
+        this.cells = cells;
+        this.mapped = mapped;
+    }
+
+    public static LevelGrid createDefault() {
+        return fromArray(DEFAULT_MAP, 22, 12);
+    }
+
+    public static LevelGrid fromArray(int[][] map, double spawnX, double spawnY) {
+        int w = map.length, h = map[0].length;
+        byte[] cells = new byte[w * h];
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) cells[x * h + y] = (byte) map[x][y];
+        }
+        LevelGrid grid = new LevelGrid(w, h, spawnX, spawnY, cells, null);
+        grid.sealBorders();
+        return grid;
+    }
+
+    // --- Access ---
+
+    public int get(int x, int y) {
+        int i = x * height + y;
+        return (cells != null) ? cells[i] : mapped.get(i);
+    }
+
+    public boolean isWall(int x, int y) {
+        return get(x, y) != 0;
+    }
+
+    public boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    // Distance from (x, y) along the unit vector (dirX, dirY) to the first wall (DDA)
+    public double rayDistance(double x, double y, double dirX, double dirY) {
+        int mapX = (int) x, mapY = (int) y;
+        double deltaDistX = Math.abs(1 / dirX), deltaDistY = Math.abs(1 / dirY);
+        int stepX = (dirX < 0) ? -1 : 1, stepY = (dirY < 0) ? -1 : 1;
+        double sideDistX = ((dirX < 0) ? x - mapX : mapX + 1.0 - x) * deltaDistX;
+        double sideDistY = ((dirY < 0) ? y - mapY : mapY + 1.0 - y) * deltaDistY;
+        while (true) {
+            double dist;
+            if (sideDistX < sideDistY) { dist = sideDistX; sideDistX += deltaDistX; mapX += stepX; }
+            else { dist = sideDistY; sideDistY += deltaDistY; mapY += stepY; }
+            if (isWall(mapX, mapY)) return dist;
+        }
+    }
+
+    // True if no wall cell lies between (x0, y0) and (x1, y1); stops at the target instead of
+    // walking on to the next wall like rayDistance
+    public boolean lineOfSight(double x0, double y0, double x1, double y1) {
+        int mapX = (int) x0, mapY = (int) y0;
+        int endX = (int) x1, endY = (int) y1;
+        double dirX = x1 - x0, dirY = y1 - y0;
+        double deltaDistX = Math.abs(1 / dirX), deltaDistY = Math.abs(1 / dirY);
+        int stepX = (dirX < 0) ? -1 : 1, stepY = (dirY < 0) ? -1 : 1;
+        double sideDistX = ((dirX < 0) ? x0 - mapX : mapX + 1.0 - x0) * deltaDistX;
+        double sideDistY = ((dirY < 0) ? y0 - mapY : mapY + 1.0 - y0) * deltaDistY;
+        // Cells crossed = the x and y grid lines between the two points
+        for (int n = Math.abs(endX - mapX) + Math.abs(endY - mapY); n > 0; n--) {
+            if (sideDistX < sideDistY) { sideDistX += deltaDistX; mapX += stepX; }
+            else { sideDistY += deltaDistY; mapY += stepY; }
+            if (isWall(mapX, mapY)) return false;
+        }
+        return true;
+    }
+
+    // Which cells can see which (see Visibility); shared by everything that uses this level.
+    // Lock-free unless it has to make a new one (first use, map changed).
+    public Visibility visibility() {
+        Visibility v = visibility;
+        if (v != null && v.version == version) return v;
+        synchronized (this) {
+            if (visibility == null || visibility.version != version) visibility = new Visibility(this);
+            return visibility;
+        }
+    }
+
+    // Only heap levels can be edited; mapped levels are read-only
+    public void set(int x, int y, int value) {
+        if (cells == null) throw new UnsupportedOperationException("Memory-mapped levels are read-only");
+        cells[x * height + y] = (byte) value;
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    // CRC32 of the size, spawn and cells, to tell whether two levels are the same
+    public int checksum() {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(width).putInt(height).putFloat((float) spawnX).putFloat((float) spawnY);
+        crc.update(header.array());
+        if (cells != null) crc.update(cells);
+        else crc.update(mapped.duplicate().clear());
+        return (int) crc.getValue();
+    }
+
+    // Rays and movement never check bounds, so the outer ring must always be wall
+    private void sealBorders() {
+        for (int x = 0; x < width; x++) {
+            if (get(x, 0) == 0) cells[x * height] = 1;
+            if (get(x, height - 1) == 0) cells[x * height + height - 1] = 1;
+        }
+        for (int y = 0; y < height; y++) {
+            if (get(0, y) == 0) cells[y] = 1;
+            if (get(width - 1, y) == 0) cells[(width - 1) * height + y] = 1;
+        }
+    }
+
+    // --- Files ---
+
+    public static LevelGrid load(String path) throws IOException {
+        Path file = Paths.get(path);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (ch.read(header) < 0) throw new IOException("Level file is truncated: " + path);
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException("Not a level file: " + path);
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported level version " + version + ": " + path);
+            int w = header.getInt();
+            int h = header.getInt();
+            double sx = header.getFloat();
+            double sy = header.getFloat();
+            long count = (long) w * h;
+            if (w < 3 || h < 3 || count > Integer.MAX_VALUE || ch.size() < HEADER_BYTES + count) {
+                throw new IOException("Bad level size " + w + "x" + h + ": " + path);
+            }
+
+            LevelGrid grid;
+            if (count >= MMAP_CELLS) {
+                // The mapping stays valid after the channel is closed
+                grid = new LevelGrid(w, h, sx, sy, null, ch.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, count));
+                if (!grid.bordersSealed()) throw new IOException("Level border must be solid wall: " + path);
+            } else {
+                ByteBuffer data = ByteBuffer.wrap(new byte[(int) count]);
+                ch.position(HEADER_BYTES);
+                while (data.hasRemaining()) {
+                    if (ch.read(data) < 0) throw new IOException("Level file is truncated: " + path);
+                }
+                grid = new LevelGrid(w, h, sx, sy, data.array(), null);
+                grid.sealBorders();
+            }
+            if (!grid.inside((int) sx, (int) sy) || grid.isWall((int) sx, (int) sy)) {
+                throw new IOException("Spawn point is not on an empty cell: " + path);
+            }
+            return grid;
+        }
+    }
+
+    private boolean bordersSealed() {
+        for (int x = 0; x < width; x++) {
+            if (get(x, 0) == 0 || get(x, height - 1) == 0) return false;
+        }
+        for (int y = 0; y < height; y++) {
+            if (get(0, y) == 0 || get(width - 1, y) == 0) return false;
+        }
+        return true;
+    }
+
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeFloat((float) spawnX);
+            out.writeFloat((float) spawnY);
+            if (cells != null) {
+                out.write(cells);
+            } else {
+                for (int i = 0, n = width * height; i < n; i++) out.write(mapped.get(i));
+            }
+        }
+    }
+
+    // Random grid of rooms joined by doorways, for testing big levels
+    public static LevelGrid generate(int width, int height, long seed) {
+        Random rand = new Random(seed);
+        byte[] cells = new byte[width * height];
+        int room = 12;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                boolean wallX = x % room == 0, wallY = y % room == 0;
+                boolean door = (wallX && y % room == room / 2) || (wallY && x % room == room / 2);
+                boolean pillar = !wallX && !wallY && rand.nextInt(40) == 0;
+                cells[x * height + y] = (byte) (pillar ? 3 : (((wallX || wallY) && !door) ? 1 : 0));
+            }
+        }
+        double spawn = room / 2 + 0.5;
+        cells[(int) spawn * height + (int) spawn] = 0;
+        LevelGrid grid = new LevelGrid(width, height, spawn, spawn, cells, null);
+        grid.sealBorders();
+        return grid;
+    }
+
+    // java LevelGrid export <file>                       writes the default map
+    // java LevelGrid generate <file> <width> <height> [seed]
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("export")) {
+            createDefault().save(args[1]);
+        } else if (args.length >= 4 && args[0].equals("generate")) {
+            long seed = (args.length > 4) ? Long.parseLong(args[4]) : 1;
+            generate(Integer.parseInt(args[2]), Integer.parseInt(args[3]), seed).save(args[1]);
+        } else {
+            System.err.println("Usage: java LevelGrid export <file> | generate <file> <width> <height> [seed]");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// The per-frame batch math of the renderer, kept apart from the passes that use it:
+//  - ray setup for a row of screen columns (direction, DDA deltas and first side distances),
+//    read by castColumn, which only walks the grid;
+//  - the camera transform of every sprite (interpolated position, depth and side offset),
+//    read by gatherSprites before it culls and projects.
+// Every element is independent, so these are the loops that can run in SIMD lanes. This class
+// is the scalar version; vector/VectorRayKernels.java does the same with the incubating Vector
+// API (jdk.incubator.vector) and is used when it was compiled and the module is present:
+//
+//   javac --add-modules jdk.incubator.vector -d . vector/VectorRayKernels.java
+//   java --add-modules jdk.incubator.vector RaycasterGame
+//
+// Otherwise (or with -Draycaster.vector=false) this scalar version is used. A vector version
+// is only used after it gave bit-for-bit the same results as this one on a set of test cameras;
+// java RayKernels runs that check on more cases and times both.
+public class RayKernels {
+    private static RayKernels shared;
+
+    // Columns [x0, x1) of a w-wide screen, camera at (posX, posY). Steps are the signs of
+    // rayDirX/rayDirY; side distances are to the first x/y grid line of the camera's cell.
+    public void setupRays(int x0, int x1, int w, double posX, double posY, double dirX, double dirY,
+                          double planeX, double planeY, double[] rayDirX, double[] rayDirY,
+                          double[] deltaDistX, double[] deltaDistY, double[] sideDistX, double[] sideDistY) {
+        int mapX = (int) posX, mapY = (int) posY;
+        for (int x = x0; x < x1; x++) {
+            double cameraX = 2 * x / (double) w - 1;
+            double rx = dirX + planeX * cameraX;
+            double ry = dirY + planeY * cameraX;
+            double dx = Math.abs(1 / rx);
+            double dy = Math.abs(1 / ry);
+            rayDirX[x] = rx;
+            rayDirY[x] = ry;
+            deltaDistX[x] = dx;
+            deltaDistY[x] = dy;
+            sideDistX[x] = ((rx < 0) ? posX - mapX : mapX + 1.0 - posX) * dx;
+            sideDistY[x] = ((ry < 0) ? posY - mapY : mapY + 1.0 - posY) * dy;
+        }
+    }
+
+    // Sprites [i0, i1): position blended from prev to cur by alpha (cur when alpha >= 1) into
+    // outX/outY, then depth along the view direction and sideways offset, both scaled by
+    // invDet like the renderer's sprite projection (depth <= 0 is behind the camera)
+    public void transformSprites(int i0, int i1, double[] prevX, double[] prevY, double[] curX, double[] curY, double alpha,
+                                 double posX, double posY, double dirX, double dirY, double planeX, double planeY,
+                                 double invDet, double[] outX, double[] outY, double[] depth, double[] side) {
+        for (int i = i0; i < i1; i++) {
+            double x = (alpha >= 1.0) ? curX[i] : prevX[i] + (curX[i] - prevX[i]) * alpha;
+            double y = (alpha >= 1.0) ? curY[i] : prevY[i] + (curY[i] - prevY[i]) * alpha;
+            double spriteX = x - posX;
+            double spriteY = y - posY;
+            outX[i] = x;
+            outY[i] = y;
+            depth[i] = invDet * (-planeY * spriteX + planeX * spriteY);
+            side[i] = invDet * (dirY * spriteX - dirX * spriteY);
+        }
+    }
+
+    public String name() {
+        return "scalar";
+    }
+
+    // The kernels for -Draycaster.vector, picked once and shared by every Renderer
+    public static synchronized RayKernels fromConfig() {
+        if (shared == null) shared = GameConfig.VECTOR ? loadVector() : new RayKernels();
+        return shared;
+    }
+
+    // The vector version if it loads and agrees with the scalar one, else the scalar one
+    static RayKernels loadVector() {
+        RayKernels scalar = new RayKernels();
+        RayKernels vector;
+        try {
+            vector = (RayKernels) Class.forName("VectorRayKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return scalar; // not compiled, or jdk.incubator.vector not added
+        }
+        int bad = mismatches(scalar, vector, 64, 1);
+        if (bad != 0) {
+            System.err.println("Vector kernels differ from the scalar ones in " + bad + " cases, using scalar");
+            return scalar;
+        }
+        return vector;
+    }
+
+    // Number of random cameras / sprite batches on which b's output is not exactly a's. Sizes
+    // vary so that every lane count leaves a tail; axis-aligned views give infinite deltas.
+    static int mismatches(RayKernels a, RayKernels b, int cases, long seed) {
+        Random rand = new Random(seed);
+        int bad = 0;
+        for (int c = 0; c < cases; c++) {
+            int w = 1 + rand.nextInt(400);
+            int x0 = rand.nextInt(w), x1 = x0 + rand.nextInt(w - x0 + 1);
+            double angle = (c % 4 == 0) ? c / 4 * (Math.PI / 2) : rand.nextDouble() * 2 * Math.PI;
+            double dirX = Math.cos(angle), dirY = Math.sin(angle);
+            if (c % 4 == 0) { dirX = Math.rint(dirX); dirY = Math.rint(dirY); }
+            double planeX = -dirY * 0.66, planeY = dirX * 0.66;
+            double posX = 1 + rand.nextDouble() * 62, posY = 1 + rand.nextDouble() * 62;
+
+            double[][] ra = new double[6][w], rb = new double[6][w];
+            a.setupRays(x0, x1, w, posX, posY, dirX, dirY, planeX, planeY, ra[0], ra[1], ra[2], ra[3], ra[4], ra[5]);
+            b.setupRays(x0, x1, w, posX, posY, dirX, dirY, planeX, planeY, rb[0], rb[1], rb[2], rb[3], rb[4], rb[5]);
+            boolean same = Arrays.deepEquals(ra, rb);
+
+            int n = rand.nextInt(300);
+            double[][] in = new double[4][n];
+            for (double[] v : in) {
+                for (int i = 0; i < n; i++) v[i] = 1 + rand.nextDouble() * 62;
+            }
+            double alpha = (c % 3 == 0) ? 1.0 : rand.nextDouble();
+            double invDet = 1.0 / (planeX * dirY - dirX * planeY);
+            double[][] sa = new double[4][n], sb = new double[4][n];
+            a.transformSprites(0, n, in[0], in[1], in[2], in[3], alpha, posX, posY, dirX, dirY, planeX, planeY,
+                    invDet, sa[0], sa[1], sa[2], sa[3]);
+            b.transformSprites(0, n, in[0], in[1], in[2], in[3], alpha, posX, posY, dirX, dirY, planeX, planeY,
+                    invDet, sb[0], sb[1], sb[2], sb[3]);
+            if (!same || !Arrays.deepEquals(sa, sb)) bad++;
+        }
+        return bad;
+    }
+
+    // Checks the vector kernels against the scalar ones and times both
+    // Usage: java --add-modules jdk.incubator.vector RayKernels [cases=10000] [iters=20000] [seed=1]
+    public static void main(String[] args) {
+        int cases = 10000, iters = 20000;
+        long seed = 1;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "cases": cases = Integer.parseInt(kv[1]); break;
+                case "iters": iters = Integer.parseInt(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+        RayKernels scalar = new RayKernels();
+        RayKernels vector;
+        try {
+            vector = (RayKernels) Class.forName("VectorRayKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("Vector kernels not available (" + e + "), the renderer uses the scalar ones");
+            return;
+        }
+        int bad = mismatches(scalar, vector, cases, seed);
+        System.out.println(vector.name() + ": " + bad + " of " + cases + " cases differ from scalar");
+        for (RayKernels k : new RayKernels[] {scalar, vector, scalar, vector}) time(k, iters);
+        if (bad != 0) System.exit(1);
+    }
+
+    // One 1920-column ray setup and 512 sprite transforms per iteration
+    private static void time(RayKernels k, int iters) {
+        int w = 1920, n = 512;
+        double[][] r = new double[6][w], s = new double[4][n], in = new double[4][n];
+        Random rand = new Random(7);
+        for (double[] v : in) {
+            for (int i = 0; i < n; i++) v[i] = rand.nextDouble() * 64;
+        }
+        double sink = 0;
+        long rays = 0, sprites = 0;
+        for (int i = 0; i < iters; i++) {
+            double angle = i * 0.01, dirX = Math.cos(angle), dirY = Math.sin(angle);
+            double planeX = -dirY * 0.66, planeY = dirX * 0.66;
+            long t0 = System.nanoTime();
+            k.setupRays(0, w, w, 10.5, 12.5, dirX, dirY, planeX, planeY, r[0], r[1], r[2], r[3], r[4], r[5]);
+            long t1 = System.nanoTime();
+            k.transformSprites(0, n, in[0], in[1], in[2], in[3], 0.5, 10.5, 12.5, dirX, dirY, planeX, planeY,
+                    1.0 / (planeX * dirY - dirX * planeY), s[0], s[1], s[2], s[3]);
+            long t2 = System.nanoTime();
+            rays += t1 - t0;
+            sprites += t2 - t1;
+            sink += r[4][i % w] + s[2][i % n];
+        }
+        System.out.printf("%-8s rays %8.2f us   sprites %8.2f us   (%s)%n", k.name(),
+                rays / 1000.0 / iters, sprites / 1000.0 / iters, sink == 42 ? "!" : ".");
+    }
+}
@@ -1,37 +1,120 @@
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.Random;
 import javax.swing.JFrame;
 //import javax.swing.Renderer;
 import javax.swing.SwingUtilities;
 
-public class RaycasterGame implements Runnable {
+public class RaycasterGame {
     private GameState state;
     private InputHandler input;
     private Renderer renderer;
     private JFrame frame;
+    private GameLoop loop;
 
     public RaycasterGame(AuthSystem auth, String username) {
-        // Initialize GameState with the auth system and username
-       state = new GameState(auth, username);
+        this(auth, username, null, loadLevel());
+    }
+
+    // replay != null plays that recording back instead of reading the keyboard
+    public RaycasterGame(AuthSystem auth, String username, InputRecording replay, LevelGrid map) {
        input = new InputHandler();
+       InputSource source = null;
+       if (replay != null) {
+           state = replay.newGame(map);
+           source = new InputPlayback(replay);
+       } else {
+           // Initialize GameState with the auth system and username
+           long seed = new Random().nextLong();
+           state = new GameState(auth, username, new Random(seed), map);
+           if (GameConfig.RECORD != null) source = startRecording(seed, map);
+       }
        state.input = input; // Make sure the state knows about the input
        renderer = new Renderer(state); 
-
-       renderer.addKeyListener(input);
-       renderer.addMouseListener(input);
+       // The window closes with System.exit; write out the rest of the timing CSVs first
+       Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+           renderer.frameTimer.close();
+           state.tickTimer.close();
+       }, "save-timings"));
 
         frame = new JFrame("Raycaster Shooter - Player: " + username);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        // Active rendering draws into a Canvas through a BufferStrategy,
+        // passive rendering lets Swing paint the Renderer panel.
+        Canvas canvas = null;
+        Component view = renderer;
+        if (GameConfig.ACTIVE_RENDERING) {
+            canvas = new Canvas();
+            canvas.setPreferredSize(new Dimension(800, 600));
+            canvas.setIgnoreRepaint(true);
+            frame.setIgnoreRepaint(true);
+            view = canvas;
+        }
+
+        view.addKeyListener(input);
+        view.addMouseListener(input);
+        view.setFocusable(true);
         
-        renderer.setFocusable(true);
-        
-        frame.add(renderer);
+        frame.add(view);
         frame.pack();
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
+        view.requestFocus();
 
-        new Thread(this).start();
+        loop = new GameLoop(state, input, renderer, canvas);
+        loop.setInputSource(source);
+        loop.start();
+    }
+
+    // Records every tick from the keyboard; the file is written when the game exits
+    private InputSource startRecording(long seed, LevelGrid map) {
+        state.useTickClock();
+        InputRecording recording = InputRecording.start(seed, map);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                recording.save(GameConfig.RECORD);
+                System.out.println("Saved " + recording.length() + " ticks to " + GameConfig.RECORD);
+            } catch (IOException e) {
+                System.err.println("Error saving recording: " + e.getMessage());
+            }
+        }, "save-recording"));
+        return new InputRecorder(input, recording);
+    }
+
+    static LevelGrid loadLevel() {
+        if (GameConfig.LEVEL == null) return LevelGrid.createDefault();
+        try {
+            return LevelGrid.load(GameConfig.LEVEL);
+        } catch (IOException e) {
+            System.err.println("Error loading level, using the default map: " + e.getMessage());
+            return LevelGrid.createDefault();
+        }
+    }
+
+    static InputRecording loadReplay(String path, LevelGrid map) {
+        try {
+            InputRecording replay = InputRecording.load(path);
+            String problem = replay.checkCompatible(map);
+            if (problem == null) return replay;
+            System.err.println("Cannot replay " + path + ": " + problem);
+        } catch (IOException e) {
+            System.err.println("Error loading recording: " + e.getMessage());
+        }
+        return null;
     }
 
     public static void main(String[] args) {
+        if (GameConfig.REPLAY != null) {
+            // Watching a recording needs no login and saves nothing
+            LevelGrid map = loadLevel();
+            InputRecording replay = loadReplay(GameConfig.REPLAY, map);
+            if (replay == null) System.exit(1);
+            SwingUtilities.invokeLater(() -> new RaycasterGame(null, "replay", replay, map));
+            return;
+        }
         AuthSystem auth = new AuthSystem();
         String user = null;
 
@@ -43,13 +126,4 @@ public class RaycasterGame implements Runnable {
         final String finalUser = user;
         SwingUtilities.invokeLater(() -> new RaycasterGame(auth, finalUser));
     }
-
-    @Override
-    public void run() {
-        while (true) {
-            state.update(input);
-            renderer.repaint();
-            try { Thread.sleep(16); } catch (Exception e) {}
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+// Headless micro-benchmark for the renderer passes and the simulation tick.
+// Nothing is shown on screen: everything renders into an offscreen BufferedImage.
+//
+// Usage:
+//   java -Djava.awt.headless=true RenderBenchmark [res=800x600,1920x1080] [enemies=8,64,512]
+//        [warmup=300] [iters=1000] [seed=42]
+//
+// Every run uses the same seed and the same scripted camera path over the map,
+// so numbers from two builds can be compared directly.
+//
+// The same passes are also JMH benchmarks (jmh/bench/EngineBenchmarks.java), run
+// with `gradle jmh`. This main stays for quick runs without a build and for the
+// p50/p99 columns.
+public class RenderBenchmark {
+    // Empty cells of the default map; the camera does a full turn at each one
+    private static final double[][] WAYPOINTS = {
+        {22.5, 12.5}, {14.5, 12.5}, {10.5, 20.5}, {3.5, 3.5}, {18.5, 18.5}, {7.5, 10.5}
+    };
+    private static final int FRAMES_PER_WAYPOINT = 90;
+
+    private static long sink; // keeps results alive so the JIT cannot drop the work
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String resList = "800x600,1920x1080";
+        String enemyList = "8,64,512";
+        int warmup = 300, iters = 1000;
+        long seed = 42;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "res": resList = kv[1]; break;
+                case "enemies": enemyList = kv[1]; break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "iters": iters = Integer.parseInt(kv[1]); break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+
+        System.out.printf("%-16s %-10s %8s %12s %12s %12s%n", "benchmark", "res", "enemies", "avg us", "p50 us", "p99 us");
+        for (String res : resList.split(",")) {
+            String[] wh = res.split("x");
+            int w = Integer.parseInt(wh[0].trim());
+            int h = Integer.parseInt(wh[1].trim());
+            for (String n : enemyList.split(",")) {
+                runRender(w, h, Integer.parseInt(n.trim()), seed, warmup, iters);
+            }
+        }
+        for (String n : enemyList.split(",")) {
+            runTick(Integer.parseInt(n.trim()), seed, warmup, iters, false);
+            runTick(Integer.parseInt(n.trim()), seed, warmup, iters, true);
+        }
+        System.out.println("(checksum " + sink + ")");
+        System.exit(0); // stop the render worker pool
+    }
+
+    // Builds a state with exactly `count` enemies, all spawned from the given seed
+    static GameState newState(int count, long seed) {
+        return newState(count, seed, false);
+    }
+
+    static GameState newState(int count, long seed, boolean enemyStore) {
+        GameState state = new GameState(null, "bench", new Random(seed));
+        state.input = new InputHandler();
+        state.clearEnemies();
+        if (enemyStore) state.useEnemyStore(count);
+        state.spawnEnemies(count);
+        return state;
+    }
+
+    // Puts the camera on frame i of the scripted path
+    static void placeCamera(GameState state, int i) {
+        double[] p = WAYPOINTS[(i / FRAMES_PER_WAYPOINT) % WAYPOINTS.length];
+        double angle = Math.PI + (i % FRAMES_PER_WAYPOINT) * (2 * Math.PI / FRAMES_PER_WAYPOINT);
+        state.posX = p[0];
+        state.posY = p[1];
+        state.dirX = Math.cos(angle);
+        state.dirY = Math.sin(angle);
+        state.planeX = -state.dirY * 0.66;
+        state.planeY = state.dirX * 0.66;
+        state.publishSnapshot();
+    }
+
+    // Every pass as {setup, op}, in print order. setup may be null; when set it runs
+    // before op on the same frame but is not timed. The JMH benchmarks in jmh/bench
+    // run these same ops, so both harnesses measure the same work.
+    public static Map<String, IntConsumer[]> renderOps(int w, int h, int enemies, long seed) {
+        GameState state = newState(enemies, seed);
+        BufferedImage target = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = target.createGraphics();
+
+        Renderer fb = new Renderer(state, true, 1);
+        Renderer par = new Renderer(state, true, GameConfig.RENDER_THREADS);
+        Renderer j2d = new Renderer(state, false, 1);
+        Renderer flat = new Renderer(state, true, 1, null);
+        Renderer cast = new Renderer(state, true, 1);
+        for (Renderer r : new Renderer[] {fb, par, j2d, flat, cast}) r.setSize(w, h);
+
+        Map<String, IntConsumer[]> ops = new LinkedHashMap<>();
+        ops.put("env fb", pass(null, i -> {
+            placeCamera(state, i);
+            fb.beginFrame(w, h);
+            fb.fillEnvironment(w, h);
+        }));
+        ops.put("env flat", pass(null, i -> {
+            placeCamera(state, i);
+            flat.beginFrame(w, h);
+            flat.fillEnvironment(w, h);
+        }));
+        // Wall hits only, one DDA per column vs adaptive, on their own renderer
+        ops.put("cast exact", pass(null, i -> {
+            placeCamera(state, i);
+            cast.beginFrame(w, h);
+            cast.adaptiveWalls = false;
+            sink += cast.castWalls(w);
+        }));
+        ops.put("cast adaptive", pass(null, i -> {
+            placeCamera(state, i);
+            cast.beginFrame(w, h);
+            cast.adaptiveWalls = true;
+            sink += cast.castWalls(w);
+        }));
+        ops.put("walls fb", pass(null, i -> {
+            placeCamera(state, i);
+            fb.beginFrame(w, h);
+            fb.renderWalls(w, h);
+        }));
+        ops.put("walls fb x" + GameConfig.RENDER_THREADS, pass(null, i -> {
+            placeCamera(state, i);
+            par.beginFrame(w, h);
+            par.renderWalls(w, h);
+        }));
+        ops.put("walls flat", pass(null, i -> {
+            placeCamera(state, i);
+            flat.beginFrame(w, h);
+            flat.renderWalls(w, h);
+        }));
+        ops.put("walls g2d", pass(null, i -> {
+            placeCamera(state, i);
+            j2d.beginFrame(w, h);
+            j2d.renderWalls(g2, w, h);
+        }));
+        // Sprites need this frame's zBuffer, so walls run first but are not timed
+        ops.put("sprites fb", pass(i -> {
+            placeCamera(state, i);
+            fb.beginFrame(w, h);
+            fb.renderWalls(w, h);
+        }, i -> fb.renderSprites(w, h)));
+        ops.put("sprites g2d", pass(i -> {
+            placeCamera(state, i);
+            j2d.beginFrame(w, h);
+            j2d.renderWalls(g2, w, h);
+        }, i -> j2d.renderSprites(g2, w, h)));
+        ops.put("minimap", pass(null, i -> {
+            placeCamera(state, i);
+            fb.beginFrame(w, h);
+            fb.drawMinimap(g2, w, h);
+        }));
+        ops.put("ui", pass(null, i -> {
+            placeCamera(state, i);
+            fb.beginFrame(w, h);
+            fb.drawUI(g2, w, h);
+        }));
+        return ops;
+    }
+
+    // One simulation tick with scripted input: walk and turn, fire every 10th tick
+    public static IntConsumer tickOp(int enemies, long seed, boolean enemyStore) {
+        GameState state = newState(enemies, seed, enemyStore);
+        InputHandler input = state.input;
+        return i -> {
+            input.up = (i / 60) % 2 == 0;
+            input.rotateLeft = (i / 45) % 3 == 0;
+            input.shooting = i % 10 == 0;
+            state.lives = 5; // never reach game over, it would skip the tick
+            state.update(input);
+            sink += state.enemyCount();
+        };
+    }
+
+    private static IntConsumer[] pass(IntConsumer setup, IntConsumer op) {
+        return new IntConsumer[] {setup, op};
+    }
+
+    private static void runRender(int w, int h, int enemies, long seed, int warmup, int iters) {
+        String res = w + "x" + h;
+        for (Map.Entry<String, IntConsumer[]> e : renderOps(w, h, enemies, seed).entrySet()) {
+            measure(e.getKey(), res, enemies, warmup, iters, e.getValue()[0], e.getValue()[1]);
+            if (e.getKey().equals("cast adaptive")) printGridWalks(w, h, enemies, seed, warmup + iters);
+        }
+    }
+
+    // Average DDA grid walks per frame over the same camera path, exact vs adaptive
+    private static void printGridWalks(int w, int h, int enemies, long seed, int frames) {
+        GameState state = newState(enemies, seed);
+        Renderer r = new Renderer(state, true, 1);
+        r.setSize(w, h);
+        long[] casts = new long[2];
+        for (int i = 0; i < frames; i++) {
+            placeCamera(state, i);
+            for (int k = 0; k < 2; k++) {
+                r.beginFrame(w, h);
+                r.adaptiveWalls = k == 1;
+                casts[k] += r.castWalls(w);
+            }
+        }
+        System.out.printf("  (grid walks per frame: %.1f exact, %.1f adaptive)%n",
+                casts[0] / (double) frames, casts[1] / (double) frames);
+    }
+
+    private static void runTick(int enemies, long seed, int warmup, int iters, boolean enemyStore) {
+        measure(enemyStore ? "tick soa" : "tick", "-", enemies, warmup, iters, null,
+                tickOp(enemies, seed, enemyStore));
+    }
+
+    // setup (if any) runs before every call to op but is not part of the timing
+    private static void measure(String name, String res, int enemies, int warmup, int iters,
+                                IntConsumer setup, IntConsumer op) {
+        for (int i = 0; i < warmup; i++) {
+            if (setup != null) setup.accept(i);
+            op.accept(i);
+        }
+        long[] samples = new long[iters];
+        long total = 0;
+        for (int i = 0; i < iters; i++) {
+            if (setup != null) setup.accept(i);
+            long t0 = System.nanoTime();
+            op.accept(i);
+            samples[i] = System.nanoTime() - t0;
+            total += samples[i];
+        }
+        Arrays.sort(samples);
+        System.out.printf("%-16s %-10s %8d %12.1f %12.1f %12.1f%n", name, res, enemies,
+                total / (double) iters / 1000.0,
+                samples[iters / 2] / 1000.0,
+                samples[Math.min(iters - 1, (int) (iters * 0.99))] / 1000.0);
+    }
+}
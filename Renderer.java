@@ -1,227 +1,788 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.Collections;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 public class Renderer extends JPanel {
+    // --- Colors (packed RGB for the framebuffer, Color for the Graphics2D path) ---
+    private static final Color CEILING = Color.DARK_GRAY;
+    private static final Color FLOOR = new Color(50, 50, 50);
+    private static final Color WALL_LIGHT = new Color(100, 100, 150); // side == 1
+    private static final Color WALL_DARK = new Color(80, 80, 130);    // side == 0
+    private static final int CEILING_RGB = CEILING.getRGB();
+    private static final int FLOOR_RGB = FLOOR.getRGB();
+    private static final int WALL_LIGHT_RGB = WALL_LIGHT.getRGB();
+    private static final int WALL_DARK_RGB = WALL_DARK.getRGB();
+    private static final int FLASH_RGB = Color.WHITE.getRGB();
+
     private GameState state;
     private double[] zBuffer; 
+    private byte[] wallSide; // side hit by the ray of each column (0 = x side, 1 = y side)
+    private byte[] wallCell; // value of the wall cell the ray hit (picks the texture)
+    private double[] wallU;  // where along that wall the ray hit, 0..1 left to right as seen
+    private int[] wallHit;   // that wall cell, as x * map.height + y
+
+    // --- Adaptive wall casting ---
+    // Neighbouring columns mostly hit the same face of the same wall cell. Only every
+    // ADAPTIVE_SPAN-th column walks the grid at first. If the two ends of a span hit the same
+    // face and no wall cell touches the triangle camera - hit point - hit point, every column in
+    // between reaches that face too, so its distance is found without walking the grid: the
+    // DDA's additions along the axis of the face are replayed (the closed form would differ in
+    // the last bits). Otherwise the middle column is cast and both halves are tried again. The
+    // result is exactly the per-column one.
+    private static final int ADAPTIVE_SPAN = 32;
+    private static final double WEDGE_EPS = 1e-7; // rounding slack around the triangle
+    boolean adaptiveWalls = GameConfig.ADAPTIVE_WALLS;
+
+    // --- Batch math (see RayKernels) ---
+    // Ray setup of every column, filled per band before the DDA walks, and the camera
+    // transform of every sprite, filled before culling
+    private final RayKernels kernels = RayKernels.fromConfig();
+    private double[] rayX, rayY, deltaX, deltaY, sideX, sideY;
+    private double[] spriteX, spriteY, spriteDepth, spriteSide;
+
+    // --- Software framebuffer ---
+    // When enabled, walls, floor/ceiling and sprites are written straight into pixels[]
+    // and the whole image is drawn with a single drawImage per frame.
+    private final boolean useFramebuffer;
+    private BufferedImage frame;
+    private int[] pixels;
+    private final TextureSet textures; // null = flat colors
+
+    // --- Render scale ---
+    // The scene (environment, walls, sprites) is drawn into frame at scene size and stretched to
+    // the window in the blit; the weapon and HUD are drawn afterwards at window size.
+    final ResolutionScaler scaler = ResolutionScaler.fromConfig();
+    private int sceneW, sceneH;
+
+    // --- Parallel wall pass ---
+    // Columns are independent, so the framebuffer wall pass is split into bands of columns
+    // on a ForkJoinPool. Each band only writes its own slice of zBuffer/wallSide/pixels.
+    private static final int MIN_BAND = 32;
+    private final ForkJoinPool wallPool; // null = serial
+    private final int wallThreads;
+    private Bands wallBands, floorBands;  // made once per frame size, reused every frame
+
+    // --- Sprites of the current frame (see gatherSprites) ---
+    // vis* arrays hold the sprites that survived culling; src = index in the enemy list or store
+    private int[] visSrc, visStartX, visEndX, visTop, visSize;
+    private double[] visDepth;
+    private Color[] visColor;
+    private boolean[] visPlaced;
+    private int visCount;
+    private int[] order;                 // draw order (vis indices), far to near
+    private int[] lastOrder;             // last frame's draw order as src indices
+    private int lastOrderCount;
+    private int[] srcStamp, srcVis;      // src -> vis index, valid when srcStamp == frameStamp
+    private int frameStamp;
+
+    // Camera for the current frame, copied from the state once so every band sees the same view
+    private double camX, camY, camDirX, camDirY, camPlaneX, camPlaneY;
+
+    // --- Interpolation ---
+    // The simulation runs at a fixed tick rate; frames in between blend the previous and
+    // current tick by alpha (0 = previous tick, 1 = latest tick).
+    private GameLoop loop; // null = always draw the latest tick
+    private double alpha = 1.0;
+
+    // Latest tick published by the simulation; the renderer reads nothing else from the game
+    private FrameSnapshot snap;
+
+    // Minimap walls, stats and pause/game over screens, kept between frames
+    private final HudLayers hud = new HudLayers();
+
+    // --- Timing ---
+    static final int PHASE_ENV = 0, PHASE_WALLS = 1, PHASE_SPRITES = 2, PHASE_BLIT = 3,
+            PHASE_WEAPON = 4, PHASE_UI = 5;
+    final FrameTimer frameTimer = new FrameTimer("frame",
+            new String[] {"env", "walls", "sprites", "blit", "weapon", "ui"}, GameConfig.timingCsvPath("frame"));
+    private static final int[] FLASH_ROWS = ovalRows(30); // muzzle flash
+    private static final Font TIMING_FONT = new Font("Monospaced", Font.PLAIN, 12);
+    private static final Color TIMING_BACKGROUND = new Color(0, 0, 0, 170);
 
     public Renderer(GameState state) {
+        this(state, GameConfig.FRAMEBUFFER, GameConfig.RENDER_THREADS);
+    }
+
+    public Renderer(GameState state, boolean useFramebuffer) {
+        this(state, useFramebuffer, 1);
+    }
+
+    public Renderer(GameState state, boolean useFramebuffer, int wallThreads) {
+        this(state, useFramebuffer, wallThreads, (useFramebuffer && GameConfig.TEXTURED) ? TextureSet.fromConfig() : null);
+    }
+
+    // textures only apply to the framebuffer path
+    public Renderer(GameState state, boolean useFramebuffer, int wallThreads, TextureSet textures) {
         this.state = state;
+        this.useFramebuffer = useFramebuffer;
+        this.textures = useFramebuffer ? textures : null;
+        this.wallThreads = Math.max(1, wallThreads);
+        this.wallPool = (this.wallThreads > 1) ? new ForkJoinPool(this.wallThreads) : null;
         setPreferredSize(new Dimension(800, 600));
         setBackground(Color.BLACK);
     }
 
+    public void setLoop(GameLoop loop) {
+        this.loop = loop;
+    }
+
+    // Passive mode: Swing calls this after repaint()
     @Override
     public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        int w = getWidth();
-        int h = getHeight();
+        render((Graphics2D) g, getWidth(), getHeight());
+    }
 
-        // 1. Draw Environment
-        g2.setColor(Color.DARK_GRAY);
-        g2.fillRect(0, 0, w, h/2);
-        g2.setColor(new Color(50, 50, 50));
-        g2.fillRect(0, h/2, w, h/2);
+    // Draws one whole frame. Also called directly by GameLoop for active rendering.
+    public void render(Graphics2D g2, int w, int h) {
+        if (w <= 0 || h <= 0) return;
+        FrameTimer t = frameTimer;
+        t.begin();
+        long start = System.nanoTime();
+        int sw = scaler.scaled(w), sh = scaler.scaled(h);
+        boolean scaled = sw != w || sh != h;
+        sceneW = sw;
+        sceneH = sh;
+        beginFrame(sw, sh);
 
-        // 2. Raycast Walls
-        renderWalls(g2, w, h);
+        if (useFramebuffer) {
+            // 1-3. Environment, walls and sprites as raw pixels, then one blit
+            fillEnvironment(sw, sh);
+            t.mark(PHASE_ENV);
+            renderWalls(sw, sh);
+            t.mark(PHASE_WALLS);
+            renderSprites(sw, sh);
+            t.mark(PHASE_SPRITES);
+            blit(g2, w, h, scaled);
+            t.mark(PHASE_BLIT);
+        } else {
+            // Below full scale the same drawing goes into the frame image first
+            Graphics2D sg = g2;
+            if (scaled) {
+                ensureFrame(sw, sh);
+                sg = frame.createGraphics();
+            }
+            sg.setColor(getBackground());
+            sg.fillRect(0, 0, sw, sh);
 
-        // 3. Render Sprites (Enemies)
-        renderSprites(g2, w, h);
+            // 1. Draw Environment
+            sg.setColor(CEILING);
+            sg.fillRect(0, 0, sw, sh/2);
+            sg.setColor(FLOOR);
+            sg.fillRect(0, sh/2, sw, sh/2);
+            t.mark(PHASE_ENV);
+
+            // 2. Raycast Walls
+            renderWalls(sg, sw, sh);
+            t.mark(PHASE_WALLS);
+
+            // 3. Render Sprites (Enemies)
+            renderSprites(sg, sw, sh);
+            t.mark(PHASE_SPRITES);
+            if (scaled) {
+                sg.dispose();
+                blit(g2, w, h, true);
+                t.mark(PHASE_BLIT);
+            }
+        }
 
         // 4. Draw Weapon
         renderWeapon(g2, w, h);
+        t.mark(PHASE_WEAPON);
 
         // 5. Draw UI (This contains the scores)
-        drawUI(g2);
+        drawUI(g2, w, h);
+        if (state.input != null && state.input.showTimings) drawTimings(g2);
+        t.mark(PHASE_UI);
+        t.end();
+        scaler.update(System.nanoTime() - start);
+    }
+
+    // Copies the scene to the window; when scaled, nearest-neighbour stretching keeps this as
+    // cheap as the unscaled copy
+    private void blit(Graphics2D g2, int w, int h, boolean scaled) {
+        if (!scaled) {
+            g2.drawImage(frame, 0, 0, null);
+            return;
+        }
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(frame, 0, 0, w, h, null);
+    }
+
+    // F3 overlay: p50/p99/max of each phase over the last second, for frames and ticks
+    private void drawTimings(Graphics2D g2) {
+        FrameTimer[] timers = {frameTimer, state.tickTimer};
+        int lines = 0;
+        for (FrameTimer ft : timers) lines += ft.phaseCount() + 1;
+        lines++; // render scale
+        int x = 20, y = 130, lineH = 14;
+        g2.setColor(TIMING_BACKGROUND);
+        g2.fillRect(x - 6, y - 12, 290, lines * lineH + 8);
+        g2.setFont(TIMING_FONT);
+        g2.setColor(Color.YELLOW);
+        g2.drawString(String.format("scale %3.0f%%  %dx%d%s", scaler.scale() * 100, sceneW, sceneH,
+                scaler.isAutomatic() ? "  auto" : ""), x, y);
+        y += lineH;
+        for (FrameTimer ft : timers) {
+            g2.setColor(Color.YELLOW);
+            g2.drawString(String.format("%-8s %5d/s   p50    p99    max", ft.getName(), ft.windowFrames()), x, y);
+            y += lineH;
+            g2.setColor(Color.WHITE);
+            for (int p = 0; p < ft.phaseCount(); p++) {
+                g2.drawString(String.format("%-14s %6.2f %6.2f %6.2f", ft.phaseName(p),
+                        ft.p50(p) / 1e6, ft.p99(p) / 1e6, ft.max(p) / 1e6), x, y);
+                y += lineH;
+            }
+        }
+    }
+
+    // Per-frame setup shared by paintComponent and RenderBenchmark
+    void beginFrame(int w, int h) {
+        snap = state.snapshots.latest();
+        alpha = (loop != null) ? loop.interpolation(snap.tickNanos) : 1.0;
+        loadCamera();
+        ensureColumnBuffers(w);
+        if (useFramebuffer) ensureFrame(w, h);
     }
 
-    private void renderWalls(Graphics2D g2, int w, int h) {
-        if (zBuffer == null || zBuffer.length != w) zBuffer = new double[w];
+    private void loadCamera() {
+        if (alpha >= 1.0) {
+            camX = snap.posX; camY = snap.posY;
+            camDirX = snap.dirX; camDirY = snap.dirY;
+            camPlaneX = snap.planeX; camPlaneY = snap.planeY;
+        } else {
+            camX = lerp(snap.prevPosX, snap.posX); camY = lerp(snap.prevPosY, snap.posY);
+            camDirX = lerp(snap.prevDirX, snap.dirX); camDirY = lerp(snap.prevDirY, snap.dirY);
+            camPlaneX = lerp(snap.prevPlaneX, snap.planeX); camPlaneY = lerp(snap.prevPlaneY, snap.planeY);
+        }
+    }
+
+    private double lerp(double prev, double cur) {
+        return (alpha >= 1.0) ? cur : prev + (cur - prev) * alpha;
+    }
+
+    // (Re)creates the framebuffer when the scene size changes
+    private void ensureFrame(int w, int h) {
+        if (frame == null || frame.getWidth() != w || frame.getHeight() != h) {
+            frame = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        }
+    }
+
+    // Same areas as the two fillRects of the Graphics2D path (an odd last row stays black)
+    void fillEnvironment(int w, int h) {
+        if (textures != null) {
+            castFloor(w, h);
+            return;
+        }
+        int half = h / 2;
+        Arrays.fill(pixels, 0, w * half, CEILING_RGB);
+        Arrays.fill(pixels, w * half, w * half * 2, FLOOR_RGB);
+        Arrays.fill(pixels, w * half * 2, w * h, 0);
+    }
+
+    // Runs the DDA for column x from its ray setup, stores the distance in zBuffer[x] and the
+    // side in wallSide[x]
+    private void castColumn(int x) {
+        LevelGrid map = snap.map;
+        double rayDirX = rayX[x], rayDirY = rayY[x];
+        double deltaDistX = deltaX[x], deltaDistY = deltaY[x];
+        double sideDistX = sideX[x], sideDistY = sideY[x];
+        int stepX = (rayDirX < 0) ? -1 : 1, stepY = (rayDirY < 0) ? -1 : 1;
+        int mapX = (int) camX;
+        int mapY = (int) camY;
+        int hit = 0, side = 0;
+
+        while (hit == 0) {
+            if (sideDistX < sideDistY) { sideDistX += deltaDistX; mapX += stepX; side = 0; }
+            else { sideDistY += deltaDistY; mapY += stepY; side = 1; }
+            if (map.isWall(mapX, mapY)) hit = 1;
+        }
+        double dist = (side == 0) ? (sideDistX - deltaDistX) : (sideDistY - deltaDistY);
+        storeHit(x, dist, side, mapX, mapY);
+    }
+
+    private void storeHit(int x, double dist, int side, int mapX, int mapY) {
+        LevelGrid map = snap.map;
+        double rayDirX = rayX[x], rayDirY = rayY[x];
+        zBuffer[x] = dist;
+        wallSide[x] = (byte) side;
+        wallCell[x] = (byte) map.get(mapX, mapY);
+        wallHit[x] = mapX * map.height + mapY;
+        // Mirror on the sides seen "from behind" so textures are never drawn flipped
+        double u = (side == 0) ? camY + dist * rayDirY : camX + dist * rayDirX;
+        u -= Math.floor(u);
+        wallU[x] = ((side == 0 && rayDirX > 0) || (side == 1 && rayDirY < 0)) ? 1 - u : u;
+    }
+
+    // Ray setup and casts for the whole screen with nothing drawn, for RenderBenchmark; returns
+    // how many columns walked the grid
+    int castWalls(int w) {
+        setupRays(0, w, w);
+        return castColumns(0, w);
+    }
+
+    // Fills columns [x0, x1) of the column buffers; returns how many of them walked the grid
+    int castColumns(int x0, int x1) {
+        if (!adaptiveWalls) {
+            for (int x = x0; x < x1; x++) castColumn(x);
+            return x1 - x0;
+        }
+        if (x1 <= x0) return 0;
+        castColumn(x0);
+        int casts = 1;
+        for (int a = x0, last = x1 - 1; a < last; ) {
+            int b = Math.min(last, a + ADAPTIVE_SPAN);
+            castColumn(b);
+            casts += 1 + fillSpan(a, b);
+            a = b;
+        }
+        return casts;
+    }
+
+    // Columns strictly between a and b, which are done already; returns the casts it made
+    private int fillSpan(int a, int b) {
+        if (b - a < 2) return 0;
+        int side = wallSide[a], hit = wallHit[a];
+        if (hit == wallHit[b] && side == wallSide[b]) {
+            int height = snap.map.height;
+            int hitX = hit / height, hitY = hit % height;
+            if (wedgeIsClear(a, b, side, hitX, hitY)) {
+                fillColumns(a, b, side, hitX, hitY);
+                return 0;
+            }
+        }
+        int mid = (a + b) >>> 1;
+        castColumn(mid);
+        return 1 + fillSpan(a, mid) + fillSpan(mid, b);
+    }
+
+    // Columns (a, b) are known to stop in (hitX, hitY) on the given side: the DDA made
+    // |hitX - camera cell x| steps along x (side 0) or the same along y, adding deltaDist each
+    // time. The additions are replayed column by column in the inner loop, so they run in SIMD
+    // lanes and every column still sees them in the DDA's order.
+    private void fillColumns(int a, int b, int side, int hitX, int hitY) {
+        double[] first = (side == 0) ? sideX : sideY, delta = (side == 0) ? deltaX : deltaY;
+        int steps = (side == 0) ? Math.abs(hitX - (int) camX) : Math.abs(hitY - (int) camY);
+        double[] dist = zBuffer;
+        System.arraycopy(first, a + 1, dist, a + 1, b - a - 1);
+        for (int k = 0; k < steps; k++) {
+            for (int x = a + 1; x < b; x++) dist[x] += delta[x];
+        }
+        for (int x = a + 1; x < b; x++) storeHit(x, dist[x] - delta[x], side, hitX, hitY);
+    }
+
+    // Whether no wall other than (hitX, hitY) touches the triangle between the camera and the
+    // hit points of columns a and b. Both rays end on the same face, so the triangle is walked
+    // one cell strip at a time from the camera to the face, across it (u: x for side 0, y for
+    // side 1); in each strip it lies between the two rays. The cells it covers are padded a
+    // little, so a wall that a ray could graze (or pass exactly at a corner) is never missed;
+    // extra cells only cost a split.
+    private boolean wedgeIsClear(int a, int b, int side, int hitX, int hitY) {
+        LevelGrid map = snap.map;
+        double ou = (side == 0) ? camX : camY, ov = (side == 0) ? camY : camX;
+        double slopeA = (side == 0) ? rayY[a] / rayX[a] : rayX[a] / rayY[a];
+        double slopeB = (side == 0) ? rayY[b] / rayX[b] : rayX[b] / rayY[b];
+        int hitU = (side == 0) ? hitX : hitY;
+        boolean ahead = ((side == 0) ? rayX[a] : rayY[a]) > 0;
+        double face = ahead ? hitU : hitU + 1;
+        for (int c = (int) ou; ; c += ahead ? 1 : -1) {
+            double u0 = ahead ? Math.max(ou, c) : Math.min(ou, c + 1);     // strip border nearer the camera
+            double u1 = ahead ? Math.min(face, c + 1) : Math.max(face, c); // and the farther one
+            double a0 = ov + (u0 - ou) * slopeA, a1 = ov + (u1 - ou) * slopeA;
+            double b0 = ov + (u0 - ou) * slopeB, b1 = ov + (u1 - ou) * slopeB;
+            double lo = Math.min(Math.min(a0, a1), Math.min(b0, b1));
+            double hi = Math.max(Math.max(a0, a1), Math.max(b0, b1));
+            int v1 = (int) Math.floor(hi + WEDGE_EPS);
+            for (int v = (int) Math.floor(lo - WEDGE_EPS); v <= v1; v++) {
+                int cx = (side == 0) ? c : v, cy = (side == 0) ? v : c;
+                if (cx == hitX && cy == hitY) continue;
+                if (!map.inside(cx, cy) || map.isWall(cx, cy)) return false;
+            }
+            if (c == hitU) return true; // the face's own line, checked for its corners
+        }
+    }
+
+    private void ensureColumnBuffers(int w) {
+        if (zBuffer == null || zBuffer.length != w) {
+            zBuffer = new double[w];
+            wallSide = new byte[w];
+            wallCell = new byte[w];
+            wallU = new double[w];
+            wallHit = new int[w];
+            rayX = new double[w];
+            rayY = new double[w];
+            deltaX = new double[w];
+            deltaY = new double[w];
+            sideX = new double[w];
+            sideY = new double[w];
+        }
+    }
+
+    void renderWalls(Graphics2D g2, int w, int h) {
+        setupRays(0, w, w);
+        castColumns(0, w);
         for (int x = 0; x < w; x++) {
-            double cameraX = 2 * x / (double) w - 1; 
-            double rayDirX = state.dirX + state.planeX * cameraX;
-            double rayDirY = state.dirY + state.planeY * cameraX;
-            int mapX = (int) state.posX;
-            int mapY = (int) state.posY;
-            double deltaDistX = Math.abs(1 / rayDirX);
-            double deltaDistY = Math.abs(1 / rayDirY);
-            double sideDistX, sideDistY;
-            int stepX, stepY, hit = 0, side = 0;
-
-            if (rayDirX < 0) { stepX = -1; sideDistX = (state.posX - mapX) * deltaDistX; }
-            else { stepX = 1; sideDistX = (mapX + 1.0 - state.posX) * deltaDistX; }
-            if (rayDirY < 0) { stepY = -1; sideDistY = (state.posY - mapY) * deltaDistY; }
-            else { stepY = 1; sideDistY = (mapY + 1.0 - state.posY) * deltaDistY; }
-
-            while (hit == 0) {
-                if (sideDistX < sideDistY) { sideDistX += deltaDistX; mapX += stepX; side = 0; }
-                else { sideDistY += deltaDistY; mapY += stepY; side = 1; }
-                if (state.worldMap[mapX][mapY] > 0) hit = 1;
-            }
-            double perpWallDist = (side == 0) ? (sideDistX - deltaDistX) : (sideDistY - deltaDistY);
-            zBuffer[x] = perpWallDist;
-            int lineHeight = (int) (h / perpWallDist);
+            int lineHeight = (int) (h / zBuffer[x]);
             int drawStart = Math.max(0, -lineHeight / 2 + h / 2);
             int drawEnd = Math.min(h - 1, lineHeight / 2 + h / 2);
-            g2.setColor((side == 1) ? new Color(100, 100, 150) : new Color(80, 80, 130));
+            g2.setColor((wallSide[x] == 1) ? WALL_LIGHT : WALL_DARK);
             g2.drawLine(x, drawStart, x, drawEnd);
         }
     }
 
-    private void renderSprites(Graphics2D g2, int w, int h) {
-        Collections.sort(state.enemies);
-        for (Enemy e : state.enemies) {
-            double spriteX = e.x - state.posX;
-            double spriteY = e.y - state.posY;
-            double invDet = 1.0 / (state.planeX * state.dirY - state.dirX * state.planeY);
-            double transformX = invDet * (state.dirY * spriteX - state.dirX * spriteY);
-            double transformY = invDet * (-state.planeY * spriteX + state.planeX * spriteY);
-            if (transformY <= 0) continue;
-            int spriteScreenX = (int)((w / 2) * (1 + transformX / transformY));
-            int spriteSize = Math.abs((int)(h / transformY * e.getSize()));
-            int drawStartX = Math.max(0, -spriteSize / 2 + spriteScreenX);
-            int drawEndX = Math.min(w - 1, spriteSize / 2 + spriteScreenX);
-            boolean isFlashing = (System.currentTimeMillis() - e.lastHitTime < 100);
-            g2.setColor(isFlashing ? Color.WHITE : e.getColor());
-            for (int stripe = drawStartX; stripe < drawEndX; stripe++) {
-                if (transformY < zBuffer[stripe]) g2.fillRect(stripe, -spriteSize/2 + h/2, 1, spriteSize);
+    // Framebuffer version: same rays, the column is written straight into pixels[]
+    void renderWalls(int w, int h) {
+        if (wallPool == null || w < 2 * MIN_BAND) {
+            renderWallBand(0, w, w, h);
+            return;
+        }
+        if (wallBands == null || wallBands.w != w || wallBands.h != h) wallBands = new Bands(false, w, w, h);
+        wallBands.run();
+    }
+
+    // One pass split into bands for the pool: columns [0, w) of the walls or floor rows
+    // [h/2, h) (floor). The tasks are kept between frames and reinitialized, and the calling
+    // thread runs the first band itself and then parks until the last one is done, so a parallel
+    // frame allocates nothing (ForkJoinPool.invoke makes a wait node whenever it has to block).
+    private class Bands {
+        final int w, h;
+        private final Band[] bands;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile Thread caller;
+
+        Bands(boolean floor, int extent, int w, int h) {
+            this.w = w; this.h = h;
+            int start = floor ? h / 2 : 0;
+            int band = Math.max(MIN_BAND, (extent + wallThreads * 4 - 1) / (wallThreads * 4));
+            bands = new Band[(extent + band - 1) / band];
+            for (int i = 0; i < bands.length; i++) {
+                bands[i] = new Band(this, floor, start + i * band, start + Math.min(extent, (i + 1) * band));
+            }
+        }
+
+        void run() {
+            caller = Thread.currentThread();
+            pending.set(bands.length);
+            for (int i = 1; i < bands.length; i++) {
+                bands[i].reinitialize();
+                wallPool.execute(bands[i]);
+            }
+            bands[0].reinitialize();
+            bands[0].invoke();
+            while (pending.get() > 0) LockSupport.park(this);
+            // done() runs just before a band is marked complete; wait for that too, or the next
+            // frame could reinitialize a band that then still gets marked done and never runs
+            for (Band b : bands) {
+                while (!b.isDone()) Thread.yield();
+            }
+        }
+
+        void done() {
+            if (pending.decrementAndGet() == 0) LockSupport.unpark(caller);
+        }
+    }
+
+    private class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Bands pass;
+        private final boolean floor;
+        private final int lo, hi;
+
+        Band(Bands pass, boolean floor, int lo, int hi) {
+            this.pass = pass; this.floor = floor; this.lo = lo; this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (floor) castFloorRows(lo, hi, pass.w, pass.h);
+                else renderWallBand(lo, hi, pass.w, pass.h);
+            } finally {
+                pass.done(); // also after an exception, or the caller would park forever
+            }
+        }
+    }
+
+    private void setupRays(int x0, int x1, int w) {
+        kernels.setupRays(x0, x1, w, camX, camY, camDirX, camDirY, camPlaneX, camPlaneY,
+                rayX, rayY, deltaX, deltaY, sideX, sideY);
+    }
+
+    private void renderWallBand(int x0, int x1, int w, int h) {
+        setupRays(x0, x1, w);
+        castColumns(x0, x1);
+        for (int x = x0; x < x1; x++) {
+            int lineHeight = (int) (h / zBuffer[x]);
+            int drawStart = Math.max(0, -lineHeight / 2 + h / 2);
+            int drawEnd = Math.min(h - 1, lineHeight / 2 + h / 2);
+            if (textures != null) {
+                drawTexturedColumn(x, lineHeight, drawStart, drawEnd, w, h);
+                continue;
+            }
+            int rgb = (wallSide[x] == 1) ? WALL_LIGHT_RGB : WALL_DARK_RGB;
+            for (int i = drawStart * w + x, end = drawEnd * w + x; i <= end; i += w) pixels[i] = rgb;
+        }
+    }
+
+    // One wall strip: a single texture column from the mip level whose texels are about one
+    // screen pixel tall, read top to bottom
+    private void drawTexturedColumn(int x, int lineHeight, int drawStart, int drawEnd, int w, int h) {
+        lineHeight = Math.max(1, lineHeight);
+        Texture t = textures.wall(wallCell[x] & 0xFF);
+        int level = t.level(t.size / (double) lineHeight);
+        int size = t.size(level), mask = size - 1;
+        int[] tex = (wallSide[x] == 1) ? t.mips[level] : t.dark[level];
+        int column = Math.min(mask, (int) (wallU[x] * size)) * size;
+        double step = size / (double) lineHeight;
+        double texPos = (drawStart - h / 2 + lineHeight / 2) * step;
+        for (int i = drawStart * w + x, end = drawEnd * w + x; i <= end; i += w) {
+            pixels[i] = tex[column + ((int) texPos & mask)];
+            texPos += step;
+        }
+    }
+
+    // --- Floor and ceiling casting ---
+    // Row by row: every pixel of a floor row is at the same distance, so the world position under
+    // it moves by a constant step from pixel to pixel. The ceiling row mirrored across the horizon
+    // is at the same distance and is filled in the same loop. Texture coordinates are 16.16 fixed
+    // point in texels of the row's mip level, so the inner loop only adds and masks.
+    // With a wall pool the rows are split into bands the same way as the wall columns.
+    private void castFloor(int w, int h) {
+        int half = h / 2;
+        if (wallPool == null || half < 2 * MIN_BAND) {
+            castFloorRows(half, 2 * half, w, h);
+        } else {
+            if (floorBands == null || floorBands.w != w || floorBands.h != h) floorBands = new Bands(true, half, w, h);
+            floorBands.run();
+        }
+        Arrays.fill(pixels, w * half * 2, w * h, 0);
+    }
+
+    // Floor rows [y0, y1) and the ceiling rows mirroring them
+    private void castFloorRows(int y0, int y1, int w, int h) {
+        int half = h / 2;
+        double rayDirX0 = camDirX - camPlaneX, rayDirY0 = camDirY - camPlaneY;
+        double spanX = 2 * camPlaneX, spanY = 2 * camPlaneY; // rayDir1 - rayDir0
+        double worldPerPixel = Math.sqrt(spanX * spanX + spanY * spanY) / w;
+        Texture floor = textures.floor, ceiling = textures.ceiling;
+        for (int y = y0; y < y1; y++) {
+            double rowDistance = 0.5 * h / (y - half + 0.5); // through the middle of the pixel row
+            double stepX = rowDistance * spanX / w, stepY = rowDistance * spanY / w;
+            double startX = camX + rowDistance * rayDirX0, startY = camY + rowDistance * rayDirY0;
+
+            int fl = floor.level(rowDistance * worldPerPixel * floor.size);
+            int fs = floor.size(fl), fm = fs - 1;
+            int[] ft = floor.mips[fl];
+            long fu = (long) (startX * fs * 65536), fv = (long) (startY * fs * 65536);
+            long fdu = (long) (stepX * fs * 65536), fdv = (long) (stepY * fs * 65536);
+
+            int cl = ceiling.level(rowDistance * worldPerPixel * ceiling.size);
+            int cs = ceiling.size(cl), cm = cs - 1;
+            int[] ct = ceiling.mips[cl];
+            long cu = (long) (startX * cs * 65536), cv = (long) (startY * cs * 65536);
+            long cdu = (long) (stepX * cs * 65536), cdv = (long) (stepY * cs * 65536);
+
+            int floorRow = y * w, ceilingRow = (2 * half - 1 - y) * w;
+            for (int x = 0; x < w; x++) {
+                pixels[floorRow + x] = ft[((int) (fu >> 16) & fm) * fs + ((int) (fv >> 16) & fm)];
+                pixels[ceilingRow + x] = ct[((int) (cu >> 16) & cm) * cs + ((int) (cv >> 16) & cm)];
+                fu += fdu; fv += fdv;
+                cu += cdu; cv += cdv;
+            }
+        }
+    }
+
+    // --- Sprite pass ---
+    // 1. gatherSprites takes every enemy from the frame snapshot, skips it if its cell is not in the
+    //    camera cell's PVS (see Visibility), transforms it into camera space once and drops it if
+    //    it is behind the camera or off the sides of the screen.
+    // 2. orderSprites sorts what is left far to near by camera depth. It starts from the previous
+    //    frame's order and fixes it with an insertion sort, which is close to linear because
+    //    the order barely changes between frames.
+    // 3. The draw methods merge runs of neighbouring stripes that pass the zBuffer test into one
+    //    span (one fillRect, or one row-wise fill in the framebuffer).
+    private void gatherSprites(int w, int h) {
+        double invDet = 1.0 / (camPlaneX * camDirY - camDirX * camPlaneY);
+        FrameSnapshot f = snap;
+        int n = f.enemyCount;
+        ensureSpriteCapacity(Math.max(n, f.maxId));
+        visCount = 0;
+        frameStamp++;
+        int cellX = (int) camX, cellY = (int) camY;
+        long[] pvs = f.map.visibility().from(cellX, cellY);
+        kernels.transformSprites(0, n, f.prevX, f.prevY, f.x, f.y, alpha, camX, camY, camDirX, camDirY,
+                camPlaneX, camPlaneY, invDet, spriteX, spriteY, spriteDepth, spriteSide);
+        for (int i = 0; i < n; i++) {
+            if (!Visibility.contains(pvs, cellX, cellY, (int) spriteX[i], (int) spriteY[i])) continue; // behind walls
+            addSprite(f.id[i], spriteDepth[i], spriteSide[i], f.size[i], f.color[i], w, h);
+        }
+    }
+
+    // transformY = depth in front of the camera, transformX = sideways, both from transformSprites
+    private void addSprite(int src, double transformY, double transformX, double size, Color color, int w, int h) {
+        if (transformY <= 0) return; // behind the camera
+        int spriteScreenX = (int)((w / 2) * (1 + transformX / transformY));
+        int spriteSize = Math.abs((int)(h / transformY * size));
+        int drawStartX = Math.max(0, -spriteSize / 2 + spriteScreenX);
+        int drawEndX = Math.min(w - 1, spriteSize / 2 + spriteScreenX);
+        if (drawStartX >= drawEndX) return; // off screen (or too small to cover a stripe)
+
+        int v = visCount++;
+        visSrc[v] = src;
+        visDepth[v] = transformY;
+        visStartX[v] = drawStartX;
+        visEndX[v] = drawEndX;
+        visTop[v] = -spriteSize / 2 + h / 2;
+        visSize[v] = spriteSize;
+        visColor[v] = color;
+        visPlaced[v] = false;
+        srcStamp[src] = frameStamp;
+        srcVis[src] = v;
+    }
+
+    private void orderSprites() {
+        int n = 0;
+        // Survivors keep last frame's order...
+        for (int k = 0; k < lastOrderCount; k++) {
+            int src = lastOrder[k];
+            if (src >= srcStamp.length || srcStamp[src] != frameStamp) continue;
+            int v = srcVis[src];
+            if (visPlaced[v]) continue;
+            visPlaced[v] = true;
+            order[n++] = v;
+        }
+        // ...newly visible sprites go at the end
+        for (int v = 0; v < visCount; v++) {
+            if (!visPlaced[v]) order[n++] = v;
+        }
+        // Insertion sort, far (large depth) first
+        for (int i = 1; i < n; i++) {
+            int v = order[i];
+            double d = visDepth[v];
+            int j = i - 1;
+            while (j >= 0 && visDepth[order[j]] < d) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = v;
+        }
+        for (int k = 0; k < n; k++) lastOrder[k] = visSrc[order[k]];
+        lastOrderCount = n;
+    }
+
+    private void ensureSpriteCapacity(int n) {
+        if (srcStamp == null || srcStamp.length < n) {
+            int cap = Math.max(16, Integer.highestOneBit(Math.max(1, n)) * 2);
+            srcStamp = Arrays.copyOf(srcStamp == null ? new int[0] : srcStamp, cap);
+            srcVis = new int[cap];
+            lastOrder = Arrays.copyOf(lastOrder == null ? new int[0] : lastOrder, cap);
+            order = new int[cap];
+            visSrc = new int[cap];
+            visDepth = new double[cap];
+            visStartX = new int[cap];
+            visEndX = new int[cap];
+            visTop = new int[cap];
+            visSize = new int[cap];
+            visColor = new Color[cap];
+            visPlaced = new boolean[cap];
+            spriteX = new double[cap];
+            spriteY = new double[cap];
+            spriteDepth = new double[cap];
+            spriteSide = new double[cap];
+        }
+    }
+
+    void renderSprites(Graphics2D g2, int w, int h) {
+        gatherSprites(w, h);
+        orderSprites();
+        for (int k = 0; k < visCount; k++) {
+            int v = order[k];
+            double depth = visDepth[v];
+            int end = visEndX[v];
+            g2.setColor(visColor[v]);
+            int stripe = visStartX[v];
+            while (stripe < end) {
+                if (!(depth < zBuffer[stripe])) { stripe++; continue; }
+                int spanStart = stripe;
+                while (stripe < end && depth < zBuffer[stripe]) stripe++;
+                g2.fillRect(spanStart, visTop[v], stripe - spanStart, visSize[v]);
+            }
+        }
+    }
+
+    // Framebuffer version: each span is filled row by row, clipped to the screen
+    void renderSprites(int w, int h) {
+        gatherSprites(w, h);
+        orderSprites();
+        for (int k = 0; k < visCount; k++) {
+            int v = order[k];
+            int startY = Math.max(0, visTop[v]);
+            int endY = Math.min(h, visTop[v] + visSize[v]); // exclusive
+            if (startY >= endY) continue;
+            double depth = visDepth[v];
+            int end = visEndX[v];
+            int rgb = visColor[v].getRGB();
+            int stripe = visStartX[v];
+            while (stripe < end) {
+                if (!(depth < zBuffer[stripe])) { stripe++; continue; }
+                int spanStart = stripe;
+                while (stripe < end && depth < zBuffer[stripe]) stripe++;
+                for (int row = startY * w; row < endY * w; row += w) {
+                    Arrays.fill(pixels, row + spanStart, row + stripe, rgb);
+                }
             }
         }
     }
 
     private void renderWeapon(Graphics2D g2, int w, int h) {
         g2.setColor(Color.GRAY);
-        int gunY = h - h/3 + (state.shootingAction ? 15 : 0);
+        int gunY = h - h/3 + (snap.shootingAction ? 15 : 0);
         g2.fillRect(w/2 - w/8, gunY, w/4, h/3);
-        if (state.shootingAction && state.shootFrame < 3) {
+        if (snap.shootingAction && snap.shootFrame < 3) {
             g2.setColor(Color.YELLOW);
-            g2.fillOval(w/2 - 15, h/2 + 20, 30, 30);
-        }
-    }
-
-    private void drawMinimap(Graphics2D g2) {
-    int w = getWidth();
-    int h = getHeight();
-    
-    // 1. Setup dimensions
-    int blockSize = 6; 
-    int padding = 20;
-    int mapPixelWidth = state.MAP_HEIGHT * blockSize; 
-    int mapPixelHeight = state.MAP_WIDTH * blockSize; 
-
-    // Top left of minimap
-    int startX = w - mapPixelWidth - padding;
-    int startY = h - mapPixelHeight - padding;
-
-    // 2. Draw Background and Border
-    g2.setColor(new Color(0, 0, 0, 180));
-    g2.fillRect(startX, startY, mapPixelWidth, mapPixelHeight);
-    g2.setColor(Color.WHITE);
-    g2.setStroke(new BasicStroke(1));
-    g2.drawRect(startX, startY, mapPixelWidth, mapPixelHeight);
-
-    // 3. Draw Walls (
-    for (int r = 0; r < state.MAP_WIDTH; r++) {     // r = row (state.posX axis)
-        for (int c = 0; c < state.MAP_HEIGHT; c++) { // c = col (state.posY axis)
-            if (state.worldMap[r][c] > 0) {
-                g2.setColor(Color.GRAY);
-                // Horizontal Screen Position = startX + column
-                // Vertical Screen Position   = startY + row
-                g2.fillRect(startX + (c * blockSize), startY + (r * blockSize), blockSize, blockSize);
-            }
-        }
-    }
-
-    // 4. Draw Enemies
-    g2.setColor(Color.RED);
-    for (Enemy e : state.enemies) {
-        int eX = startX + (int)(e.y * blockSize);
-        int eY = startY + (int)(e.x * blockSize);
-        g2.fillOval(eX - 1, eY - 1, 3, 3);
-    }
-
-    // 5. Draw Player
-    g2.setColor(Color.GREEN);
-    int pX = startX + (int)(state.posY * blockSize); // Player Y maps to Screen X
-    int pY = startY + (int)(state.posX * blockSize); // Player X maps to Screen Y
-    g2.fillOval(pX - 2, pY - 2, 5, 5);
-
-    // 6. Draw View Direction Line
-    g2.setColor(Color.GREEN);
-    int lineLength = 8;
-    g2.drawLine(pX, pY, 
-                (int)(pX + state.dirY * lineLength), 
-                (int)(pY + state.dirX * lineLength));
-    }
-
-    private void drawUI(Graphics2D g2) {
-    int w = getWidth();
-    int h = getHeight();
-
-    // Pause button 
-    g2.setColor(new Color(50, 50, 50, 200)); 
-    g2.fillRoundRect(w - 80, 10, 70, 40, 10, 10);
-    g2.setColor(Color.WHITE);
-    g2.setStroke(new BasicStroke(2));
-    g2.drawRoundRect(w - 80, 10, 70, 40, 10, 10);
-    
-    g2.setFont(new Font("Arial", Font.BOLD, 14));
-    String btnText = state.input.paused ? "RESUME" : "PAUSE";
-    g2.drawString(btnText, w - 73, 35);
-
-    if (state.input.paused && !state.isGameOver) {
-        g2.setColor(new Color(0, 0, 0, 120)); // Dim the screen
-        g2.fillRect(0, 0, w, h);
-        
-        g2.setColor(Color.YELLOW);
-        g2.setFont(new Font("Arial", Font.BOLD, 50));
-        g2.drawString("GAME PAUSED", w/2 - 170, h/2);
-    }
-
-    // Player HUD with necessary info
-    g2.setFont(new Font("Monospaced", Font.BOLD, 20));
-    g2.setColor(state.isInvincible ? Color.YELLOW : Color.RED);
-    g2.drawString("LIVES:    " + state.lives, 20, 40);
-    g2.setColor(Color.CYAN);
-    g2.drawString("SCORE:    " + state.currentScore, 20, 70);
-    g2.setColor(Color.YELLOW);
-    g2.drawString("HI-SCORE: " + state.highScore, 20, 100);
-
-    drawMinimap(g2);
-
-    // Game over screen
-    if (state.isGameOver) {
-        // Dim the background
-        g2.setColor(new Color(0, 0, 0, 180)); // Semi-transparent black
-        g2.fillRect(0, 0, w, h);
-
-        // Draw game over text
-        g2.setColor(Color.RED);
-        g2.setFont(new Font("Arial", Font.BOLD, 60));
-        String mainText = "GAME OVER";
-        int mainWidth = g2.getFontMetrics().stringWidth(mainText);
-        g2.drawString(mainText, w / 2 - mainWidth / 2, h / 2 - 50);
-
-        // Show final score
-        g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Arial", Font.BOLD, 25));
-        String scoreText = "FINAL SCORE: " + state.currentScore;
-        int scoreWidth = g2.getFontMetrics().stringWidth(scoreText);
-        g2.drawString(scoreText, w / 2 - scoreWidth / 2, h / 2 + 10);
-
-        // Show high score
-        g2.setColor(Color.YELLOW);
-        g2.drawString("PERSONAL BEST: " + state.highScore, w / 2 - scoreWidth / 2, h / 2 + 45);
+            int x = w/2 - 15, y = h/2 + 20;
+            for (int r = 0; r < FLASH_ROWS.length; r += 2) {
+                if (FLASH_ROWS[r + 1] > 0) g2.fillRect(x + FLASH_ROWS[r], y + r / 2, FLASH_ROWS[r + 1], 1);
+            }
+        }
+    }
 
-        // Restart text
-        g2.setColor(Color.LIGHT_GRAY);
-        g2.setFont(new Font("Arial", Font.ITALIC, 18));
-        String retryText = "Press SPACE to Restart";
-        int retryWidth = g2.getFontMetrics().stringWidth(retryText);
-        g2.drawString(retryText, w / 2 - retryWidth / 2, h / 2 + 100);
+    // (start, length) of every row of fillOval(0, 0, size, size); filling those with fillRect
+    // draws the same pixels without the Path2D that fillOval allocates on every call
+    private static int[] ovalRows(int size) {
+        BufferedImage mask = new BufferedImage(size, size, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g = mask.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillOval(0, 0, size, size);
+        g.dispose();
+        int[] rows = new int[2 * size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if ((mask.getRGB(x, y) & 0xFFFFFF) == 0) continue;
+                if (rows[2 * y + 1] == 0) rows[2 * y] = x;
+                rows[2 * y + 1]++;
+            }
+        }
+        return rows;
+    }
+
+    void drawMinimap(Graphics2D g2, int w, int h) {
+        hud.drawMinimap(g2, snap, camX, camY, camDirX, camDirY, w, h);
     }
+
+    // Everything but the minimap markers comes from images kept by hud, redrawn only when the
+    // numbers or the state they show change
+    void drawUI(Graphics2D g2, int w, int h) {
+        hud.drawButton(g2, snap, w);
+        if (!snap.isGameOver) hud.drawScreen(g2, snap, w, h); // paused: under the HUD
+        hud.drawStats(g2, snap);
+        drawMinimap(g2, w, h);
+        if (snap.isGameOver) hud.drawScreen(g2, snap, w, h);  // game over: on top of it
     }
-}
\ No newline at end of file
+}
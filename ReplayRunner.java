@@ -0,0 +1,96 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Plays a recorded session (see InputRecording) headlessly at full speed and reports tick and,
+// optionally, frame timings. Recordings of heavy real sessions make repeatable benchmarks:
+// every run simulates exactly the same ticks, and the final state line must match between
+// builds that did not change gameplay.
+//
+// Usage:
+//   java -Draycaster.level=<file> ReplayRunner <recording> [runs=3] [render=800x600]
+// render= also draws every tick into an offscreen image and times the frames.
+public class ReplayRunner {
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length < 1) {
+            System.err.println("Usage: java ReplayRunner <recording> [runs=3] [render=WxH]");
+            System.exit(1);
+        }
+        int runs = 3;
+        int w = 0, h = 0;
+        for (int i = 1; i < args.length; i++) {
+            String[] kv = args[i].split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "runs": runs = Integer.parseInt(kv[1]); break;
+                case "render": {
+                    String[] wh = kv[1].split("x");
+                    w = Integer.parseInt(wh[0].trim());
+                    h = Integer.parseInt(wh[1].trim());
+                    break;
+                }
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+
+        LevelGrid map = RaycasterGame.loadLevel();
+        InputRecording recording = RaycasterGame.loadReplay(args[0], map);
+        if (recording == null) System.exit(1);
+        System.out.println(args[0] + ": " + recording.length() + " ticks ("
+                + recording.length() / recording.tickRate + " s), seed " + recording.seed);
+
+        // The first runs include JIT warm-up; compare the last one between builds
+        for (int run = 1; run <= runs; run++) {
+            replay(recording, map, w, h, run);
+        }
+        System.exit(0); // stop the render worker pool
+    }
+
+    private static void replay(InputRecording recording, LevelGrid map, int w, int h, int run) {
+        GameState state = recording.newGame(map);
+        InputHandler input = new InputHandler();
+        state.input = input;
+        InputPlayback playback = new InputPlayback(recording);
+        Renderer renderer = (w > 0) ? new Renderer(state) : null;
+        BufferedImage image = (w > 0) ? new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB) : null;
+
+        int n = recording.length();
+        long[] tickNanos = new long[n];
+        long[] frameNanos = new long[(w > 0) ? n : 0];
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            long t0 = System.nanoTime();
+            playback.next(state, input);
+            state.update(input);
+            long t1 = System.nanoTime();
+            tickNanos[i] = t1 - t0;
+            if (renderer != null) {
+                Graphics2D g2 = image.createGraphics();
+                renderer.render(g2, w, h);
+                g2.dispose();
+                frameNanos[i] = System.nanoTime() - t1;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("run %d: %.2f s, %.0f ticks/s%n", run, seconds, n / seconds);
+        printTimes("  tick", tickNanos);
+        if (renderer != null) printTimes("  frame " + w + "x" + h, frameNanos);
+        System.out.println("  final " + InputPlayback.describe(state));
+        state.tickTimer.close();
+        if (renderer != null) renderer.frameTimer.close();
+    }
+
+    private static void printTimes(String name, long[] nanos) {
+        if (nanos.length == 0) return;
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long v : sorted) sum += v;
+        System.out.printf("%-20s avg %8.1f us  p50 %8.1f us  p99 %8.1f us  max %8.1f us%n", name,
+                sum / 1000.0 / sorted.length, sorted[sorted.length / 2] / 1000.0,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1000.0,
+                sorted[sorted.length - 1] / 1000.0);
+    }
+}
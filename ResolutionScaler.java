@@ -0,0 +1,70 @@
+// Picks the internal render scale (see Renderer): the fraction of the window width and height
+// that walls, floor/ceiling and sprites are drawn at before being stretched to the window.
+//
+// With a budget, update() is fed the cost of every frame and nudges the scale so that the
+// average stays under it: down as soon as the average is over budget (by the square root of
+// the overshoot, since the pixel work grows with scale^2), up one step at a time once there is
+// clear headroom. After every change it waits a while and restarts the average, so the scale
+// settles instead of bouncing between two steps.
+// Without a budget the scale stays where it was set.
+public class ResolutionScaler {
+    public static final double MIN_SCALE = 0.25, MAX_SCALE = 1.0;
+    private static final double STEP = 0.05;        // scales are multiples of this
+    private static final double HEADROOM = 0.75;    // raise only when under 75% of the budget
+    private static final double SMOOTHING = 0.1;    // weight of the newest frame in the average
+    private static final int SETTLE_FRAMES = 30;    // frames to wait after a change
+
+    private final long budgetNanos; // 0 = fixed scale
+    private double scale;
+    private double average;          // smoothed frame cost, ns
+    private int frames;              // since the last change
+
+    public ResolutionScaler(double scale, long budgetNanos) {
+        this.scale = clamp(scale);
+        this.budgetNanos = budgetNanos;
+    }
+
+    // From -Draycaster.renderScale (percent) and -Draycaster.frameBudget (ms)
+    public static ResolutionScaler fromConfig() {
+        return new ResolutionScaler(GameConfig.RENDER_SCALE / 100.0, GameConfig.FRAME_BUDGET_MS * 1_000_000L);
+    }
+
+    public double scale() {
+        return scale;
+    }
+
+    public boolean isAutomatic() {
+        return budgetNanos > 0;
+    }
+
+    public void setScale(double scale) {
+        this.scale = clamp(scale);
+        frames = 0;
+    }
+
+    // Size of the scene buffer for a window of the given size, at least 1 x 1
+    public int scaled(int size) {
+        return Math.max(1, (int) Math.round(size * scale));
+    }
+
+    // Call once per frame with what the frame cost
+    public void update(long frameNanos) {
+        if (budgetNanos <= 0) return;
+        average = (frames == 0) ? frameNanos : average + (frameNanos - average) * SMOOTHING;
+        if (++frames < SETTLE_FRAMES) return;
+
+        double next = scale;
+        if (average > budgetNanos) {
+            next = Math.min(scale - STEP, scale * Math.sqrt(budgetNanos / average));
+        } else if (average < budgetNanos * HEADROOM) {
+            next = scale + STEP;
+        }
+        next = clamp(next);
+        if (next != scale) setScale(next);
+    }
+
+    private static double clamp(double s) {
+        s = Math.round(s / STEP) * STEP;
+        return Math.max(MIN_SCALE, Math.min(MAX_SCALE, s));
+    }
+}
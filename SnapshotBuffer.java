@@ -0,0 +1,34 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lock-free triple buffer of FrameSnapshots between one writer (the simulation) and one
+// reader (the renderer).
+//
+// The writer always fills its own slot and publish() swaps it with the shared "ready" slot.
+// The reader takes the ready slot only if something new was published since its last look,
+// otherwise it keeps reading the one it has. Each side owns a different slot at all times,
+// so neither ever waits for the other and the reader only ever sees complete snapshots.
+public class SnapshotBuffer {
+    private static final int FRESH = 4; // flag bit next to the 2-bit slot index
+
+    private final FrameSnapshot[] slots = {new FrameSnapshot(), new FrameSnapshot(), new FrameSnapshot()};
+    private final AtomicInteger ready = new AtomicInteger(2);
+    private int writeIndex = 0; // writer thread only
+    private int readIndex = 1;  // reader thread only
+
+    // The slot to fill; only valid until the next publish()
+    public FrameSnapshot beginWrite() {
+        return slots[writeIndex];
+    }
+
+    public void publish() {
+        writeIndex = ready.getAndSet(writeIndex | FRESH) & 3;
+    }
+
+    // Latest complete snapshot; stays valid until the next call to latest()
+    public FrameSnapshot latest() {
+        if ((ready.get() & FRESH) != 0) {
+            readIndex = ready.getAndSet(readIndex) & 3;
+        }
+        return slots[readIndex];
+    }
+}
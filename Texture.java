@@ -0,0 +1,156 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+// One square texture and its mip levels, as packed RGB ints in column-major order: texel (u, v)
+// of level L is mips[L][u * size(L) + v]. Walls are drawn one vertical strip at a time, so a
+// strip reads one contiguous run of a column.
+//
+// Level 0 is the full texture, every further level halves the size (2x2 box filter) down to
+// 1x1. dark holds the same levels pre-shaded for x-side walls, so the wall loop is a plain copy.
+public class Texture {
+    public static final int DEFAULT_SIZE = 64;
+    private static final int MAX_SIZE = 1024;
+
+    public final int size;       // of level 0, a power of two
+    public final int levels;
+    public final int[][] mips;
+    public final int[][] dark;
+
+    // pixels: size * size packed RGB in column-major order
+    public Texture(int size, int[] pixels) {
+        this.size = size;
+        this.levels = Integer.numberOfTrailingZeros(size) + 1;
+        mips = new int[levels][];
+        dark = new int[levels][];
+        mips[0] = pixels;
+        for (int l = 1; l < levels; l++) mips[l] = downsample(mips[l - 1], size >> (l - 1));
+        for (int l = 0; l < levels; l++) dark[l] = shade(mips[l], 0.8);
+    }
+
+    public int size(int level) {
+        return size >> level;
+    }
+
+    // Mip level to use when one screen pixel covers about texelsPerPixel level-0 texels
+    public int level(double texelsPerPixel) {
+        if (!(texelsPerPixel >= 2)) return 0;
+        int l = 31 - Integer.numberOfLeadingZeros((int) Math.min(texelsPerPixel, size));
+        return Math.min(levels - 1, l);
+    }
+
+    // Square power-of-two images are used as they are; anything else is resampled to DEFAULT_SIZE
+    public static Texture fromImage(BufferedImage img) {
+        int size = img.getWidth();
+        if (size != img.getHeight() || Integer.bitCount(size) != 1 || size > MAX_SIZE) {
+            size = DEFAULT_SIZE;
+            BufferedImage scaled = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(img, 0, 0, size, size, null);
+            g.dispose();
+            img = scaled;
+        }
+        int[] pixels = new int[size * size];
+        for (int u = 0; u < size; u++) {
+            for (int v = 0; v < size; v++) pixels[u * size + v] = img.getRGB(u, v) & 0xFFFFFF;
+        }
+        return new Texture(size, pixels);
+    }
+
+    // Each texel of the next level is the average of a 2x2 block
+    private static int[] downsample(int[] src, int srcSize) {
+        int size = srcSize / 2;
+        int[] dst = new int[size * size];
+        for (int u = 0; u < size; u++) {
+            for (int v = 0; v < size; v++) {
+                int a = src[(2 * u) * srcSize + 2 * v], b = src[(2 * u) * srcSize + 2 * v + 1];
+                int c = src[(2 * u + 1) * srcSize + 2 * v], d = src[(2 * u + 1) * srcSize + 2 * v + 1];
+                int r = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF) + ((c >> 16) & 0xFF) + ((d >> 16) & 0xFF) + 2) >> 2;
+                int g = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF) + ((c >> 8) & 0xFF) + ((d >> 8) & 0xFF) + 2) >> 2;
+                int bl = ((a & 0xFF) + (b & 0xFF) + (c & 0xFF) + (d & 0xFF) + 2) >> 2;
+                dst[u * size + v] = (r << 16) | (g << 8) | bl;
+            }
+        }
+        return dst;
+    }
+
+    private static int[] shade(int[] src, double f) {
+        int[] dst = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+            int c = src[i];
+            int r = (int) (((c >> 16) & 0xFF) * f), g = (int) (((c >> 8) & 0xFF) * f), b = (int) ((c & 0xFF) * f);
+            dst[i] = (r << 16) | (g << 8) | b;
+        }
+        return dst;
+    }
+
+    // --- Built-in textures (used when no image file is given) ---
+
+    // Rows of bricks with dark mortar lines, offset every other row
+    public static Texture bricks(int rgb, int mortar, long seed) {
+        int s = DEFAULT_SIZE;
+        Random rand = new Random(seed);
+        int[] p = new int[s * s];
+        for (int v = 0; v < s; v++) {
+            int row = v / 8;
+            for (int u = 0; u < s; u++) {
+                int uu = (u + ((row & 1) == 0 ? 0 : 8)) % s;
+                boolean joint = v % 8 == 0 || uu % 16 == 0;
+                p[u * s + v] = joint ? mortar : vary(rgb, rand, 12);
+            }
+        }
+        return new Texture(s, p);
+    }
+
+    // Large square slabs
+    public static Texture stone(int rgb, long seed) {
+        int s = DEFAULT_SIZE;
+        Random rand = new Random(seed);
+        int[] p = new int[s * s];
+        for (int u = 0; u < s; u++) {
+            for (int v = 0; v < s; v++) {
+                boolean joint = u % 32 == 0 || v % 32 == 0;
+                p[u * s + v] = joint ? vary(rgb, rand, 0) & 0x7F7F7F : vary(rgb, rand, 20);
+            }
+        }
+        return new Texture(s, p);
+    }
+
+    // Vertical planks with grain
+    public static Texture planks(int rgb, long seed) {
+        int s = DEFAULT_SIZE;
+        Random rand = new Random(seed);
+        int[] p = new int[s * s];
+        for (int u = 0; u < s; u++) {
+            int grain = rand.nextInt(16) - 8;
+            for (int v = 0; v < s; v++) {
+                p[u * s + v] = (u % 16 == 0) ? 0x202020 : vary(add(rgb, grain), rand, 6);
+            }
+        }
+        return new Texture(s, p);
+    }
+
+    // Two-tone checkerboard of tiles
+    public static Texture tiles(int a, int b, long seed) {
+        int s = DEFAULT_SIZE;
+        Random rand = new Random(seed);
+        int[] p = new int[s * s];
+        for (int u = 0; u < s; u++) {
+            for (int v = 0; v < s; v++) p[u * s + v] = vary(((u / 32 + v / 32) & 1) == 0 ? a : b, rand, 6);
+        }
+        return new Texture(s, p);
+    }
+
+    private static int vary(int rgb, Random rand, int amount) {
+        return (amount == 0) ? rgb : add(rgb, rand.nextInt(2 * amount + 1) - amount);
+    }
+
+    private static int add(int rgb, int d) {
+        int r = Math.max(0, Math.min(255, ((rgb >> 16) & 0xFF) + d));
+        int g = Math.max(0, Math.min(255, ((rgb >> 8) & 0xFF) + d));
+        int b = Math.max(0, Math.min(255, (rgb & 0xFF) + d));
+        return (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,81 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.imageio.ImageIO;
+
+// Every texture the renderer uses, loaded once at startup.
+//
+// Wall cell value v (1..255) uses walls[(v - 1) % walls.length]. With a texture directory
+// (-Draycaster.textures=<dir>) the files wall1, wall2, ... (consecutive, any format ImageIO
+// reads: .png, .jpg, .bmp, .gif), floor and ceiling are read from it; anything missing falls
+// back to the built-in textures.
+public class TextureSet {
+    private static final String[] EXTENSIONS = {".png", ".jpg", ".bmp", ".gif"};
+    private static TextureSet shared;
+
+    public final Texture[] walls;
+    public final Texture floor, ceiling;
+
+    public TextureSet(Texture[] walls, Texture floor, Texture ceiling) {
+        this.walls = walls;
+        this.floor = floor;
+        this.ceiling = ceiling;
+    }
+
+    public Texture wall(int cell) {
+        return walls[(cell - 1) % walls.length];
+    }
+
+    // The set for -Draycaster.textures, loaded on first use and shared by every Renderer
+    public static synchronized TextureSet fromConfig() {
+        if (shared == null) shared = load(GameConfig.TEXTURES);
+        return shared;
+    }
+
+    // dir may be null (built-in textures only)
+    public static TextureSet load(String dir) {
+        TextureSet builtIn = builtIn();
+        if (dir == null) return builtIn;
+        List<Texture> walls = new ArrayList<>();
+        for (int i = 1; ; i++) {
+            Texture t = read(dir, "wall" + i);
+            if (t == null) break;
+            walls.add(t);
+        }
+        Texture floor = read(dir, "floor");
+        Texture ceiling = read(dir, "ceiling");
+        if (walls.isEmpty() && floor == null && ceiling == null) {
+            System.err.println("No textures found in " + dir + ", using the built-in ones");
+        }
+        return new TextureSet(walls.isEmpty() ? builtIn.walls : walls.toArray(new Texture[0]),
+                floor != null ? floor : builtIn.floor, ceiling != null ? ceiling : builtIn.ceiling);
+    }
+
+    private static Texture read(String dir, String name) {
+        for (String ext : EXTENSIONS) {
+            File f = new File(dir, name + ext);
+            if (!f.isFile()) continue;
+            try {
+                BufferedImage img = ImageIO.read(f);
+                if (img != null) return Texture.fromImage(img);
+                System.err.println("Unreadable texture " + f);
+            } catch (IOException e) {
+                System.err.println("Could not read texture " + f + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // Wall 1 keeps the colors of the old flat walls
+    public static TextureSet builtIn() {
+        Texture[] walls = {
+            Texture.bricks(0x646496, 0x3C3C5A, 1),
+            Texture.stone(0x787878, 2),
+            Texture.planks(0x7A5230, 3),
+            Texture.bricks(0x8C3A2E, 0x4A4A4A, 4),
+        };
+        return new TextureSet(walls, Texture.tiles(0x323232, 0x3A3A3A, 5), Texture.stone(0x404040, 6));
+    }
+}
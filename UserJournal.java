@@ -0,0 +1,162 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Write-behind persistence for AuthSystem.
+//
+// Changes are not written by the caller: append() only queues a line, and a background
+// thread writes the queued lines to the journal in batches (one write + sync per batch).
+// Every COMPACT_EVERY entries the whole database is written to a temporary file, synced and
+// atomically renamed over the snapshot, and then the journal is emptied. On startup the
+// snapshot is loaded and the journal replayed on top of it; replaying is idempotent, so a
+// crash at any point (even between the rename and the truncate) loses at most the last batch.
+public class UserJournal {
+    private static final long FLUSH_NANOS = 200_000_000L;
+    private static final int COMPACT_EVERY = 500;
+
+    private final File journalFile, snapshotFile;
+    private final Supplier<List<String>> snapshot; // current database as snapshot lines
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private FileOutputStream journalOut; // opened on the first write
+    private Writer journalWriter;
+    private int sinceCompaction;
+
+    public UserJournal(File journalFile, File snapshotFile, Supplier<List<String>> snapshot) {
+        this.journalFile = journalFile;
+        this.snapshotFile = snapshotFile;
+        this.snapshot = snapshot;
+        writer = new Thread(this::writeLoop, "user-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Passes on every line that ends in '\n'. A torn last line from a crash has no '\n' and is
+    // dropped: "R:alice:secr" would otherwise still parse and register a truncated password.
+    public static void replay(File journalFile, Consumer<String> entry) {
+        if (!journalFile.exists()) return;
+        try (BufferedReader br = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = br.read()) != -1) {
+                if (c == '\n') {
+                    entry.accept(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error replaying user journal: " + e.getMessage());
+        }
+    }
+
+    // Never blocks on disk
+    public void append(String entry) {
+        queue.add(entry);
+    }
+
+    // Writes everything still queued and compacts; called on shutdown
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (running) {
+            LockSupport.parkNanos(FLUSH_NANOS);
+            writeBatch();
+            if (sinceCompaction >= COMPACT_EVERY) compact();
+        }
+        writeBatch();
+        if (sinceCompaction > 0) compact();
+        closeJournal();
+    }
+
+    private void writeBatch() {
+        if (queue.isEmpty()) return;
+        try {
+            if (journalWriter == null) {
+                // Terminating a line torn by a crash would make replay accept it, so cut it off
+                dropTornTail();
+                journalOut = new FileOutputStream(journalFile, true);
+                journalWriter = new OutputStreamWriter(journalOut, StandardCharsets.UTF_8);
+            }
+            String line;
+            while ((line = queue.poll()) != null) {
+                journalWriter.write(line);
+                journalWriter.write('\n');
+                sinceCompaction++;
+            }
+            journalWriter.flush();
+            journalOut.getFD().sync();
+        } catch (IOException e) {
+            System.err.println("Error writing user journal: " + e.getMessage());
+        }
+    }
+
+    private void dropTornTail() throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(journalFile, "rw")) {
+            long end = f.length();
+            while (end > 0) {
+                f.seek(end - 1);
+                if (f.read() == '\n') break;
+                end--;
+            }
+            if (end < f.length()) f.setLength(end);
+        }
+    }
+
+    private void compact() {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp);
+                 Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                for (String line : snapshot.get()) {
+                    w.write(line);
+                    w.write('\n');
+                }
+                w.flush();
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // Everything written so far is in the snapshot now
+            closeJournal();
+            new FileOutputStream(journalFile).close();
+            sinceCompaction = 0;
+        } catch (IOException e) {
+            System.err.println("Error compacting user database: " + e.getMessage());
+        }
+    }
+
+    private void closeJournal() {
+        if (journalWriter == null) return;
+        try {
+            journalWriter.close();
+        } catch (IOException e) {
+            System.err.println("Error closing user journal: " + e.getMessage());
+        }
+        journalWriter = null;
+        journalOut = null;
+    }
+}
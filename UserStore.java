@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Binary user database for very large user counts: an open-addressing hash table (linear
+// probing) memory-mapped from users.db, with each record stored inline in its slot.
+//
+// Opening only maps the file, and login/getHighScore read straight from the mapping, so startup
+// time and heap use do not grow with the number of users. Changes are written into the mapping
+// and the OS writes the pages back; force() syncs them. The table doubles (into a new file that
+// is renamed over the old one) when it is 3/4 full. One mapping holds at most 2 GB, so the
+// largest table is 2^24 (about 16.7 million) slots, which holds about 12.5 million users.
+//
+// File format (big-endian):
+//   "RCUS"  magic
+//   int     version (1)
+//   int     capacity (power of two)
+//   int     count
+//   capacity slots of SLOT_BYTES:
+//     byte    name length in UTF-8 bytes, 0 = empty slot
+//     byte    password length
+//     short   unused
+//     int     high score
+//     byte[]  name, MAX_NAME bytes
+//     byte[]  password, MAX_PASSWORD bytes
+public class UserStore {
+    private static final int MAGIC = 0x52435553; // "RCUS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4;
+    private static final int COUNT_OFFSET = 12;
+    public static final int MAX_NAME = 32, MAX_PASSWORD = 32;
+    private static final int SLOT_BYTES = 8 + MAX_NAME + MAX_PASSWORD;
+
+    private final Path path;
+    private MappedByteBuffer buf;
+    private int capacity, mask, count;
+
+    private UserStore(Path path, MappedByteBuffer buf) {
+        this.path = path;
+        setMapping(buf);
+    }
+
+    private void setMapping(MappedByteBuffer buf) {
+        this.buf = buf;
+        capacity = buf.getInt(8);
+        mask = capacity - 1;
+        count = buf.getInt(COUNT_OFFSET);
+    }
+
+    public static UserStore open(String path) throws IOException {
+        Path file = Paths.get(path);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (ch.size() < HEADER_BYTES) throw new IOException("User database is truncated: " + path);
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            if (buf.getInt(0) != MAGIC) throw new IOException("Not a user database: " + path);
+            int version = buf.getInt(4);
+            if (version != VERSION) throw new IOException("Unsupported user database version " + version + ": " + path);
+            int cap = buf.getInt(8);
+            if (cap < 16 || Integer.bitCount(cap) != 1 || ch.size() < HEADER_BYTES + (long) cap * SLOT_BYTES) {
+                throw new IOException("Bad user database size: " + path);
+            }
+            return new UserStore(file, buf);
+        }
+    }
+
+    // Creates an empty store with room for at least the given number of slots (overwrites the file)
+    public static UserStore create(String path, int minCapacity) throws IOException {
+        Path file = Paths.get(path);
+        return new UserStore(file, createMapping(file, minCapacity));
+    }
+
+    private static MappedByteBuffer createMapping(Path file, int minCapacity) throws IOException {
+        int cap = Math.max(16, Integer.highestOneBit(Math.max(1, minCapacity - 1)) * 2);
+        long bytes = HEADER_BYTES + (long) cap * SLOT_BYTES;
+        if (bytes > Integer.MAX_VALUE) throw new IOException("User database would exceed 2 GB: " + cap + " slots");
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes); // grows the file, zero-filled
+            buf.putInt(0, MAGIC);
+            buf.putInt(4, VERSION);
+            buf.putInt(8, cap);
+            buf.putInt(COUNT_OFFSET, 0);
+            return buf;
+        }
+    }
+
+    public int size() { return count; }
+    public int capacity() { return capacity; }
+
+    // --- Lookup ---
+
+    // Slot of the user, -1 if there is none
+    public int find(String user) {
+        byte[] name = user.getBytes(StandardCharsets.UTF_8);
+        if (name.length == 0 || name.length > MAX_NAME) return -1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int at = offset(slot);
+            int len = buf.get(at);
+            if (len == 0) return -1;
+            if (len == name.length && equalBytes(at + 8, name)) return slot;
+        }
+    }
+
+    public boolean isUsed(int slot) {
+        return buf.get(offset(slot)) != 0;
+    }
+
+    public boolean checkPassword(int slot, String password) {
+        byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+        int at = offset(slot);
+        return buf.get(at + 1) == pass.length && equalBytes(at + 8 + MAX_NAME, pass);
+    }
+
+    public int getScore(int slot) {
+        return buf.getInt(offset(slot) + 4);
+    }
+
+    public void setScore(int slot, int score) {
+        buf.putInt(offset(slot) + 4, score);
+    }
+
+    public String nameAt(int slot) {
+        int at = offset(slot);
+        byte[] name = new byte[buf.get(at)];
+        buf.get(at + 8, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    // --- Changes ---
+
+    // Adds a user with score 0 and returns its slot; -1 if it exists or a field is too long.
+    // May grow the table, which moves every user to a new slot.
+    public int insert(String user, String password) throws IOException {
+        byte[] name = user.getBytes(StandardCharsets.UTF_8);
+        byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+        if (name.length == 0 || name.length > MAX_NAME || pass.length > MAX_PASSWORD) return -1;
+        if (find(user) >= 0) return -1;
+        if ((count + 1) * 4L > capacity * 3L) grow();
+        int slot = hash(name) & mask;
+        while (buf.get(offset(slot)) != 0) slot = (slot + 1) & mask;
+        int at = offset(slot);
+        buf.put(at + 1, (byte) pass.length);
+        buf.putInt(at + 4, 0);
+        buf.put(at + 8, name);
+        buf.put(at + 8 + MAX_NAME, pass);
+        buf.put(at, (byte) name.length); // last, so a half-written slot reads as empty
+        buf.putInt(COUNT_OFFSET, ++count);
+        return slot;
+    }
+
+    // Rehashes into a file twice the size and renames it over the current one
+    private void grow() throws IOException {
+        Path tmp = Paths.get(path + ".tmp");
+        MappedByteBuffer old = buf;
+        int oldCapacity = capacity;
+        MappedByteBuffer next = createMapping(tmp, capacity * 2);
+        int nextMask = next.getInt(8) - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int from = HEADER_BYTES + i * SLOT_BYTES;
+            if (old.get(from) == 0) continue;
+            byte[] slotBytes = new byte[SLOT_BYTES];
+            old.get(from, slotBytes);
+            byte[] name = new byte[slotBytes[0]];
+            System.arraycopy(slotBytes, 8, name, 0, name.length);
+            int slot = hash(name) & nextMask;
+            while (next.get(HEADER_BYTES + slot * SLOT_BYTES) != 0) slot = (slot + 1) & nextMask;
+            next.put(HEADER_BYTES + slot * SLOT_BYTES, slotBytes);
+        }
+        next.putInt(COUNT_OFFSET, count);
+        next.force();
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        setMapping(next);
+    }
+
+    // Writes changed pages back to the file
+    public void force() {
+        buf.force();
+    }
+
+    // --- Internals ---
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private boolean equalBytes(int at, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buf.get(at + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    // FNV-1a, with the high bits folded in since only the low bits pick the slot
+    private static int hash(byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes) h = (h ^ (b & 0xFF)) * 0x01000193;
+        return h ^ (h >>> 16);
+    }
+
+    // java UserStore migrate    converts users.txt (and users.journal) into users.db
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args[0].equals("migrate")) {
+            AuthSystem.migrateToStore();
+        } else {
+            System.err.println("Usage: java UserStore migrate");
+        }
+    }
+}
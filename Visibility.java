@@ -0,0 +1,395 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Potentially visible set (PVS): for a floor cell, a bitset of the cells that can be seen from
+// somewhere inside it, within RADIUS cells. Used to drop hidden enemies before any projection
+// (Renderer) or line-of-sight work (EnemyScheduler).
+//
+// The set is conservative: a cell is left out only if every segment from a point of the source
+// cell to a point of it crosses the inside of a wall cell (grazing a wall or passing exactly
+// between two diagonal walls counts as seen). It is then grown by one cell, so a sprite whose
+// centre is just around a corner still counts. A segment leaving the source cell crosses one of
+// its four edges, so the lines through each edge are swept away from the cell one strip of cells
+// at a time, as convex polygons in line space (where the line crosses the edge, slope). In each
+// strip a polygon is cut into the runs of floor cells it enters; the cells it reaches in a run are
+// marked and the lines that stay inside the run go on to the next strip.
+//
+// Sets are built on a background thread and read without locks: small maps get every set at load
+// time, bigger ones get a cell's set when something first asks for it, into a bounded table.
+// Until a set is there, from() returns null and everything counts as visible, which gives the
+// same answers (only slower), since the sets never leave out a visible cell. A map change
+// (LevelGrid.getVersion) gets a new Visibility from LevelGrid.visibility().
+//
+// Bit layout: cell (x, y) seen from (cx, cy) is bit (x - cx + RADIUS) * SIDE + (y - cy + RADIUS).
+// Cells outside the window are not covered; contains() says true for them.
+public class Visibility {
+    public static final int RADIUS = 64;
+    private static final int SIDE = 2 * RADIUS + 1;
+    private static final int WORDS = (SIDE * SIDE + 63) / 64; // + 1 word holding the cell index
+    private static final int TABLE = 4096;                    // ~8 MB of sets
+    private static final int WANTED = 64;                     // cells asked for, not built yet
+    private static final long IDLE_NANOS = 2_000_000_000L;    // builder thread exits after this
+    private static final double EPS = 1e-9;                   // rounding slack, always toward "seen"
+    private static final double MAX_SLOPE = SIDE + 1;         // steeper lines leave the window in one strip
+    private static final int MERGE_AT = 32;                   // polygons per strip before merging per run
+
+    private final LevelGrid map;
+    final int version;          // map version the sets are for
+    private final boolean all;  // whole map fits the table: slot = cell index, built at load time
+    // Published sets; the last word of each is its cell index, so a reader can tell whose set a
+    // slot holds. Only the builder thread writes.
+    private final AtomicReferenceArray<long[]> table = new AtomicReferenceArray<>(TABLE);
+    private final AtomicIntegerArray wanted = new AtomicIntegerArray(WANTED);
+    private final AtomicBoolean building = new AtomicBoolean();
+    public volatile int built; // sets built so far (stats)
+
+    // --- Builder thread only ---
+    private int nextCell; // load-time pass over a small map
+    private final boolean[] seen = new boolean[SIDE * SIDE];
+    private final ArrayList<double[]> polys = new ArrayList<>(), next = new ArrayList<>();
+    private int[] runOf = new int[64]; // run (first floor cell) of each polygon in next
+
+    public Visibility(LevelGrid map) {
+        this(map, true);
+    }
+
+    // background = false leaves the builder thread off, for main, which calls build itself
+    private Visibility(LevelGrid map, boolean background) {
+        this.map = map;
+        this.version = map.getVersion();
+        this.all = (long) map.width * map.height <= TABLE;
+        for (int i = 0; i < WANTED; i++) wanted.set(i, -1);
+        if (!background) building.set(true);
+        else if (all) startBuilder();
+    }
+
+    // The set of cell (cx, cy), or null if it is not built yet (then everything may be visible).
+    // Lock-free and allocation-free; safe from any thread. The returned array never changes.
+    public long[] from(int cx, int cy) {
+        int key = cx * map.height + cy;
+        long[] set = lookup(key);
+        if (set == null && map.inside(cx, cy)) {
+            wanted.set(key & (WANTED - 1), key);
+            if (!building.get()) startBuilder();
+        }
+        return set;
+    }
+
+    private long[] lookup(int key) {
+        int slot = all ? key : slot(key);
+        long[] set = table.get(slot);
+        if (set != null && set[WORDS] == key) return set;
+        if (all) return null;
+        set = table.get(slot ^ 1);
+        return (set != null && set[WORDS] == key) ? set : null;
+    }
+
+    private static int slot(int key) {
+        return (key * 0x9E3779B9 >>> 16) & (TABLE - 1);
+    }
+
+    // Whether (x, y) may be visible from (cx, cy), whose set is fromSet (null = not built)
+    public static boolean contains(long[] fromSet, int cx, int cy, int x, int y) {
+        if (fromSet == null) return true;
+        int dx = x - cx + RADIUS, dy = y - cy + RADIUS;
+        if (dx < 0 || dy < 0 || dx >= SIDE || dy >= SIDE) return true; // not covered
+        int bit = dx * SIDE + dy;
+        return (fromSet[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    // Cell-level visibility for gameplay code
+    public boolean canSee(int cx, int cy, int x, int y) {
+        return contains(from(cx, cy), cx, cy, x, y);
+    }
+
+    // --- Builder thread ---
+
+    private void startBuilder() {
+        if (!building.compareAndSet(false, true)) return;
+        Thread t = new Thread(this::runBuilder, "pvs-builder");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    // Builds wanted cells first, then (small maps) the rest of the map; exits when idle for a
+    // while or when the map has changed, and from() starts it again when needed
+    private void runBuilder() {
+        long idleSince = System.nanoTime();
+        while (map.getVersion() == version) {
+            int key = takeWanted();
+            if (key < 0 && all) key = nextUnbuilt();
+            if (key >= 0) {
+                publish(key, build(key / map.height, key % map.height));
+                idleSince = System.nanoTime();
+            } else if (System.nanoTime() - idleSince > IDLE_NANOS) {
+                building.set(false);
+                // A cell asked for after the last look would otherwise wait for the next ask
+                if (!hasWanted() || !building.compareAndSet(false, true)) return;
+            } else {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+        building.set(false);
+    }
+
+    private int takeWanted() {
+        for (int i = 0; i < WANTED; i++) {
+            int key = wanted.getAndSet(i, -1);
+            if (key >= 0 && lookup(key) == null) return key;
+        }
+        return -1;
+    }
+
+    private boolean hasWanted() {
+        for (int i = 0; i < WANTED; i++) {
+            if (wanted.get(i) >= 0) return true;
+        }
+        return false;
+    }
+
+    private int nextUnbuilt() {
+        int cells = map.width * map.height;
+        while (nextCell < cells && table.get(nextCell) != null) nextCell++;
+        return (nextCell < cells) ? nextCell++ : -1;
+    }
+
+    private void publish(int key, long[] set) {
+        set[WORDS] = key;
+        int slot = all ? key : slot(key);
+        // Two slots per cell on big maps: a free one if there is one, else take turns
+        if (!all && table.get(slot) != null && (table.get(slot ^ 1) == null || (built & 1) != 0)) slot ^= 1;
+        table.set(slot, set); // readers holding the old set keep a valid (older) answer
+        built++;
+    }
+
+    private long[] build(int cx, int cy) {
+        long[] set = new long[WORDS + 1];
+        if (map.isWall(cx, cy)) return set;
+        Arrays.fill(seen, false);
+        seen[RADIUS * SIDE + RADIUS] = true;
+        sweep(cx, cy, true, 1);
+        sweep(cx, cy, true, -1);
+        sweep(cx, cy, false, 1);
+        sweep(cx, cy, false, -1);
+        // Grow by one cell
+        for (int dx = 0; dx < SIDE; dx++) {
+            for (int dy = 0; dy < SIDE; dy++) {
+                if (!seen[dx * SIDE + dy]) continue;
+                for (int ex = Math.max(0, dx - 1); ex <= Math.min(SIDE - 1, dx + 1); ex++) {
+                    for (int ey = Math.max(0, dy - 1); ey <= Math.min(SIDE - 1, dy + 1); ey++) {
+                        int bit = ex * SIDE + ey;
+                        set[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        }
+        return set;
+    }
+
+    // Marks the cells reached by lines leaving (cx, cy) through one edge: the +u edge (dir 1) or
+    // the -u edge (dir -1), u being x (alongX) or y. A line is v = v0 + m * w, w the distance from
+    // the edge along u, and a polygon is its (v0, m) corners as {v0, m, v0, m, ...}.
+    private void sweep(int cx, int cy, boolean alongX, int dir) {
+        int cu = alongX ? cx : cy, cv = alongX ? cy : cx;
+        int vMin = cv - RADIUS, vMax = cv + RADIUS;
+        polys.clear();
+        polys.add(new double[] {cv, -MAX_SLOPE, cv + 1, -MAX_SLOPE, cv + 1, MAX_SLOPE, cv, MAX_SLOPE});
+        for (int t = 0; t < RADIUS && !polys.isEmpty(); t++) {
+            int u = (dir > 0) ? cu + 1 + t : cu - 1 - t; // cells of this strip
+            next.clear();
+            for (double[] p : polys) {
+                // Runs of floor cells [j0, j1) the polygon's lines enter the strip in
+                int j = Math.max(vMin, (int) Math.floor(min(p, t) - EPS));
+                int jLast = Math.min(vMax, (int) Math.floor(max(p, t) + EPS));
+                while (j <= jLast) {
+                    if (!isFloor(alongX, u, j)) { j++; continue; }
+                    int j0 = j, j1 = j + 1;
+                    while (j0 > vMin && isFloor(alongX, u, j0 - 1)) j0--;
+                    while (j1 <= vMax && isFloor(alongX, u, j1)) j1++;
+                    double[] q = clip(clip(p, t, j0 - EPS, true), t, j1 + EPS, false);
+                    if (q != null) {
+                        // Cells of the run crossed before the lines leave it
+                        double lo = Math.max(j0, Math.min(min(q, t), min(q, t + 1)));
+                        double hi = Math.min(j1, Math.max(max(q, t), max(q, t + 1)));
+                        int k1 = Math.min(j1 - 1, (int) Math.floor(hi + EPS));
+                        for (int k = Math.max(j0, (int) Math.floor(lo - EPS)); k <= k1; k++) {
+                            int x = alongX ? u : k, y = alongX ? k : u;
+                            seen[(x - cx + RADIUS) * SIDE + (y - cy + RADIUS)] = true;
+                        }
+                        q = clip(clip(q, t + 1, j0 - EPS, true), t + 1, j1 + EPS, false);
+                        if (q != null) addNext(q, j0);
+                    }
+                    j = j1 + 1;
+                }
+            }
+            if (next.size() > MERGE_AT) mergeRuns();
+            polys.clear();
+            polys.addAll(next);
+        }
+    }
+
+    private boolean isFloor(boolean alongX, int u, int v) {
+        int x = alongX ? u : v, y = alongX ? v : u;
+        return map.inside(x, y) && !map.isWall(x, y);
+    }
+
+    private void addNext(double[] q, int run) {
+        if (next.size() == runOf.length) runOf = Arrays.copyOf(runOf, 2 * runOf.length);
+        runOf[next.size()] = run;
+        next.add(q);
+    }
+
+    // Lines from different runs that reach the same run are kept apart until there are too many;
+    // then each run's polygons become their convex hull, which only adds lines (more cells seen)
+    private void mergeRuns() {
+        ArrayList<double[]> merged = new ArrayList<>();
+        boolean[] done = new boolean[next.size()];
+        for (int i = 0; i < next.size(); i++) {
+            if (done[i]) continue;
+            int n = 0;
+            for (int k = i; k < next.size(); k++) {
+                if (runOf[k] == runOf[i]) n += next.get(k).length;
+            }
+            double[] pts = new double[n];
+            n = 0;
+            for (int k = i; k < next.size(); k++) {
+                if (runOf[k] != runOf[i]) continue;
+                double[] q = next.get(k);
+                System.arraycopy(q, 0, pts, n, q.length);
+                n += q.length;
+                done[k] = true;
+            }
+            merged.add(hull(pts));
+        }
+        next.clear();
+        next.addAll(merged);
+    }
+
+    // Lowest / highest v at distance w over the polygon's lines
+    private static double min(double[] p, double w) {
+        double v = Double.MAX_VALUE;
+        for (int i = 0; i < p.length; i += 2) v = Math.min(v, p[i] + p[i + 1] * w);
+        return v;
+    }
+
+    private static double max(double[] p, double w) {
+        double v = -Double.MAX_VALUE;
+        for (int i = 0; i < p.length; i += 2) v = Math.max(v, p[i] + p[i + 1] * w);
+        return v;
+    }
+
+    // The part of polygon p whose lines have v >= c (atLeast) or v <= c at distance w; null if none
+    private static double[] clip(double[] p, double w, double c, boolean atLeast) {
+        if (p == null) return null;
+        int n = p.length / 2;
+        double[] out = new double[4 * n]; // n + 1 corners when convex, more after rounding
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            int k = (i + 1) % n;
+            double fa = p[2 * i] + p[2 * i + 1] * w - c, fb = p[2 * k] + p[2 * k + 1] * w - c;
+            if (!atLeast) { fa = -fa; fb = -fb; }
+            if (fa >= 0) { out[m++] = p[2 * i]; out[m++] = p[2 * i + 1]; }
+            if ((fa >= 0) != (fb >= 0)) {
+                double s = fa / (fa - fb);
+                out[m++] = p[2 * i] + (p[2 * k] - p[2 * i]) * s;
+                out[m++] = p[2 * i + 1] + (p[2 * k + 1] - p[2 * i + 1]) * s;
+            }
+        }
+        return (m == 0) ? null : Arrays.copyOf(out, m);
+    }
+
+    // Convex hull of {x, y, x, y, ...} (monotone chain), counter-clockwise
+    private static double[] hull(double[] pts) {
+        int n = pts.length / 2;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> (pts[2 * a] != pts[2 * b]) ? Double.compare(pts[2 * a], pts[2 * b])
+                : Double.compare(pts[2 * a + 1], pts[2 * b + 1]));
+        int[] h = new int[2 * n + 1];
+        int k = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int start = k;
+            for (int j = 0; j < n; j++) {
+                int i = order[(pass == 0) ? j : n - 1 - j];
+                while (k >= start + 2 && cross(pts, h[k - 2], h[k - 1], i) <= 0) k--;
+                h[k++] = i;
+            }
+            k--; // the last point starts the other half
+        }
+        double[] out = new double[2 * Math.max(k, 1)];
+        for (int i = 0; i < out.length / 2; i++) {
+            out[2 * i] = pts[2 * h[i]];
+            out[2 * i + 1] = pts[2 * h[i] + 1];
+        }
+        return out;
+    }
+
+    private static double cross(double[] p, int o, int a, int b) {
+        return (p[2 * a] - p[2 * o]) * (p[2 * b + 1] - p[2 * o + 1])
+                - (p[2 * a + 1] - p[2 * o + 1]) * (p[2 * b] - p[2 * o]);
+    }
+
+    // Checks the sets against random clear segments and times the build
+    // Usage: java Visibility [size=64] [seeds=1,2,3] [segments=200000]
+    public static void main(String[] args) {
+        int size = 64, segments = 200000;
+        String seeds = "1,2,3";
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0]) {
+                case "size": size = Integer.parseInt(kv[1]); break;
+                case "seeds": seeds = kv[1]; break;
+                case "segments": segments = Integer.parseInt(kv[1]); break;
+                default: System.err.println("Unknown option: " + kv[0]);
+            }
+        }
+        boolean failed = false;
+        for (String s : seeds.split(",")) {
+            long seed = Long.parseLong(s.trim());
+            LevelGrid map = LevelGrid.generate(size, size, seed);
+            Visibility vis = new Visibility(map, false);
+            long[][] sets = new long[map.width * map.height][];
+            long t0 = System.nanoTime();
+            int floors = 0;
+            for (int x = 0; x < map.width; x++) {
+                for (int y = 0; y < map.height; y++) {
+                    if (map.isWall(x, y)) continue;
+                    sets[x * map.height + y] = vis.build(x, y);
+                    floors++;
+                }
+            }
+            double msPerCell = (System.nanoTime() - t0) / 1e6 / floors;
+            // Clear segments between random floor points; their end cells must see each other
+            Random rand = new Random(seed);
+            int clear = 0, missed = 0;
+            for (int i = 0; i < segments; i++) {
+                double x0 = rand.nextDouble() * map.width, y0 = rand.nextDouble() * map.height;
+                double len = rand.nextDouble() * RADIUS, angle = rand.nextDouble() * 2 * Math.PI;
+                double x1 = x0 + len * Math.cos(angle), y1 = y0 + len * Math.sin(angle);
+                if (!map.inside((int) x1, (int) y1) || x1 < 0 || y1 < 0) continue;
+                if (map.isWall((int) x0, (int) y0) || map.isWall((int) x1, (int) y1)) continue;
+                if (!map.lineOfSight(x0, y0, x1, y1)) continue;
+                clear++;
+                if (!contains(sets[(int) x0 * map.height + (int) y0], (int) x0, (int) y0, (int) x1, (int) y1)) {
+                    if (missed++ < 5) System.out.printf("  missed (%.4f,%.4f)->(%.4f,%.4f)%n", x0, y0, x1, y1);
+                }
+            }
+            long inSet = 0;
+            for (long[] set : sets) {
+                if (set == null) continue;
+                for (int w = 0; w < WORDS; w++) inSet += Long.bitCount(set[w]);
+            }
+            System.out.printf("seed %d: %d floor cells, %.3f ms per set, %.0f cells per set, %d of %d clear segments missed%n",
+                    seed, floors, msPerCell, inSet / (double) floors, missed, clear);
+            if (missed != 0) failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
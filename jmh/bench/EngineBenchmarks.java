@@ -0,0 +1,185 @@
+package bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH versions of the RenderBenchmark passes and the simulation tick.
+// JMH cannot generate benchmarks in the default package, and a named package cannot
+// import the game classes, so the ops are fetched once per trial by reflection from
+// RenderBenchmark.renderOps / tickOp. The timed call is a plain IntConsumer.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmarks {
+
+    // --- States ---
+
+    @State(Scope.Thread)
+    public static class Passes {
+        @Param({"800x600", "1920x1080"})
+        public String res;
+
+        @Param({"8", "64", "512"})
+        public int enemies;
+
+        @Param("42")
+        public long seed;
+
+        Map<String, IntConsumer[]> ops;
+        String parallelWalls; // "walls fb xN", N is GameConfig.RENDER_THREADS
+        int frame; // walks the scripted camera path, one step per call
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void load() throws ReflectiveOperationException {
+            String[] wh = res.split("x");
+            ops = (Map<String, IntConsumer[]>) Class.forName("RenderBenchmark")
+                    .getMethod("renderOps", int.class, int.class, int.class, long.class)
+                    .invoke(null, Integer.parseInt(wh[0]), Integer.parseInt(wh[1]), enemies, seed);
+            for (String name : ops.keySet()) {
+                if (name.startsWith("walls fb x")) parallelWalls = name;
+            }
+        }
+
+        void run(String name) {
+            ops.get(name)[1].accept(frame++);
+        }
+
+        // Runs the untimed setup of a pass on the frame the next run() will use
+        void prepare(String name) {
+            ops.get(name)[0].accept(frame);
+        }
+    }
+
+    // Sprites need the walls of the same frame first; Level.Invocation keeps that out of the score
+    @State(Scope.Thread)
+    public static class SpritesFb extends Passes {
+        @Setup(Level.Invocation)
+        public void walls() {
+            prepare("sprites fb");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SpritesG2d extends Passes {
+        @Setup(Level.Invocation)
+        public void walls() {
+            prepare("sprites g2d");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Tick {
+        @Param({"8", "64", "512"})
+        public int enemies;
+
+        @Param({"false", "true"})
+        public boolean enemyStore;
+
+        @Param("42")
+        public long seed;
+
+        IntConsumer op;
+        int tick;
+
+        @Setup(Level.Trial)
+        public void load() throws ReflectiveOperationException {
+            op = (IntConsumer) Class.forName("RenderBenchmark")
+                    .getMethod("tickOp", int.class, long.class, boolean.class)
+                    .invoke(null, enemies, seed, enemyStore);
+        }
+    }
+
+    // --- Environment ---
+
+    @Benchmark
+    public void envFb(Passes p) {
+        p.run("env fb");
+    }
+
+    @Benchmark
+    public void envFlat(Passes p) {
+        p.run("env flat");
+    }
+
+    // --- Wall casting ---
+
+    @Benchmark
+    public void castExact(Passes p) {
+        p.run("cast exact");
+    }
+
+    @Benchmark
+    public void castAdaptive(Passes p) {
+        p.run("cast adaptive");
+    }
+
+    // --- Walls ---
+
+    @Benchmark
+    public void wallsFb(Passes p) {
+        p.run("walls fb");
+    }
+
+    @Benchmark
+    public void wallsFbParallel(Passes p) {
+        p.run(p.parallelWalls);
+    }
+
+    @Benchmark
+    public void wallsFlat(Passes p) {
+        p.run("walls flat");
+    }
+
+    @Benchmark
+    public void wallsG2d(Passes p) {
+        p.run("walls g2d");
+    }
+
+    // --- Sprites ---
+
+    @Benchmark
+    public void spritesFb(SpritesFb p) {
+        p.run("sprites fb");
+    }
+
+    @Benchmark
+    public void spritesG2d(SpritesG2d p) {
+        p.run("sprites g2d");
+    }
+
+    // --- HUD ---
+
+    @Benchmark
+    public void minimap(Passes p) {
+        p.run("minimap");
+    }
+
+    @Benchmark
+    public void ui(Passes p) {
+        p.run("ui");
+    }
+
+    // --- Simulation ---
+
+    @Benchmark
+    public void tick(Tick t) {
+        t.op.accept(t.tick++);
+    }
+}
@@ -0,0 +1,80 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// RayKernels with the Vector API: as many columns or sprites per step as the CPU has double
+// lanes (2 with SSE/NEON, 4 with AVX2, 8 with AVX-512); the rest goes through the scalar loop.
+// Every lane does the same operations in the same order as the scalar code (no fused
+// multiply-add), so the results are bit-for-bit the same.
+//
+// Lives outside the main source directory because it needs the incubator module to compile:
+//   javac --add-modules jdk.incubator.vector -d . vector/VectorRayKernels.java
+// RayKernels loads it by name and falls back to the scalar kernels when it is missing.
+public class VectorRayKernels extends RayKernels {
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+    private static final DoubleVector IOTA;
+
+    static {
+        double[] lanes = new double[S.length()];
+        for (int i = 0; i < lanes.length; i++) lanes[i] = i;
+        IOTA = DoubleVector.fromArray(S, lanes, 0);
+    }
+
+    @Override
+    public void setupRays(int x0, int x1, int w, double posX, double posY, double dirX, double dirY,
+                          double planeX, double planeY, double[] rayDirX, double[] rayDirY,
+                          double[] deltaDistX, double[] deltaDistY, double[] sideDistX, double[] sideDistY) {
+        int mapX = (int) posX, mapY = (int) posY;
+        double behindX = posX - mapX, aheadX = mapX + 1.0 - posX;
+        double behindY = posY - mapY, aheadY = mapY + 1.0 - posY;
+        int x = x0;
+        for (int end = x0 + S.loopBound(x1 - x0); x < end; x += S.length()) {
+            DoubleVector cameraX = IOTA.add(x).mul(2).div(w).sub(1);
+            DoubleVector rx = cameraX.mul(planeX).add(dirX);
+            DoubleVector ry = cameraX.mul(planeY).add(dirY);
+            DoubleVector dx = DoubleVector.broadcast(S, 1).div(rx).lanewise(VectorOperators.ABS);
+            DoubleVector dy = DoubleVector.broadcast(S, 1).div(ry).lanewise(VectorOperators.ABS);
+            VectorMask<Double> negX = rx.compare(VectorOperators.LT, 0);
+            VectorMask<Double> negY = ry.compare(VectorOperators.LT, 0);
+            rx.intoArray(rayDirX, x);
+            ry.intoArray(rayDirY, x);
+            dx.intoArray(deltaDistX, x);
+            dy.intoArray(deltaDistY, x);
+            DoubleVector.broadcast(S, aheadX).blend(behindX, negX).mul(dx).intoArray(sideDistX, x);
+            DoubleVector.broadcast(S, aheadY).blend(behindY, negY).mul(dy).intoArray(sideDistY, x);
+        }
+        super.setupRays(x, x1, w, posX, posY, dirX, dirY, planeX, planeY,
+                rayDirX, rayDirY, deltaDistX, deltaDistY, sideDistX, sideDistY);
+    }
+
+    @Override
+    public void transformSprites(int i0, int i1, double[] prevX, double[] prevY, double[] curX, double[] curY, double alpha,
+                                 double posX, double posY, double dirX, double dirY, double planeX, double planeY,
+                                 double invDet, double[] outX, double[] outY, double[] depth, double[] side) {
+        int i = i0;
+        for (int end = i0 + S.loopBound(i1 - i0); i < end; i += S.length()) {
+            DoubleVector x = DoubleVector.fromArray(S, curX, i);
+            DoubleVector y = DoubleVector.fromArray(S, curY, i);
+            if (alpha < 1.0) {
+                DoubleVector px = DoubleVector.fromArray(S, prevX, i);
+                DoubleVector py = DoubleVector.fromArray(S, prevY, i);
+                x = x.sub(px).mul(alpha).add(px);
+                y = y.sub(py).mul(alpha).add(py);
+            }
+            DoubleVector spriteX = x.sub(posX);
+            DoubleVector spriteY = y.sub(posY);
+            x.intoArray(outX, i);
+            y.intoArray(outY, i);
+            spriteX.mul(-planeY).add(spriteY.mul(planeX)).mul(invDet).intoArray(depth, i);
+            spriteX.mul(dirY).sub(spriteY.mul(dirX)).mul(invDet).intoArray(side, i);
+        }
+        super.transformSprites(i, i1, prevX, prevY, curX, curY, alpha, posX, posY, dirX, dirY, planeX, planeY,
+                invDet, outX, outY, depth, side);
+    }
+
+    @Override
+    public String name() {
+        return "vector x" + S.length();
+    }
+}